@@ -1,160 +1,499 @@
 import java.awt.Point;
-import java.util.ArrayList;
-import java.util.PriorityQueue;
 import java.util.Stack;
 
 /**
- * 
- * This class implements a static A* method. 
+ *
+ * This class implements a static A* method, and Jump Point Search,
+ * which finds paths of the same cost on grids where every step costs
+ * the same, while putting far fewer cells on the open list.
+ * Searches keep their state in a SearchContext, one per thread unless
+ * the caller passes its own, so any number of threads can search the
+ * same Grid at once without locking.
  *
  */
 public class AStarPathFinder {
-	
+
+	/**
+	 * Steps to the eight neighbors of a cell, west first and then clockwise.
+	 */
+	static final int[] DX = {-1, -1, 0, 1, 1, 1, 0, -1};
+
+	/**
+	 * Steps to the eight neighbors of a cell, west first and then clockwise.
+	 */
+	static final int[] DY = {0, -1, -1, -1, 0, 1, 1, 1};
+
+	/**
+	 * Cost of the step to each neighbor: 10 straight, 14 diagonally.
+	 */
+	private static final int[] COST = {10, 14, 10, 14, 10, 14, 10, 14};
+
+	/**
+	 * The context of the searches on each thread.
+	 */
+	private static final ThreadLocal<SearchContext> CONTEXTS = new ThreadLocal<SearchContext>() {
+		@Override
+		protected SearchContext initialValue() {
+			return new SearchContext();
+		}
+	};
+
+	/**
+	 * Finds a path between two cells of a map of nodes. Copies the
+	 * passable flags into a Grid and searches that, so the nodes of the
+	 * map are only read.
+	 *
+	 * Runtime: O(m + n log n)
+	 * (where m is the number of cells on the map and n the number of
+	 * cells searched)
+	 *
+	 * @param map The map, indexed map[x][y].
+	 * @param start The first cell of the path.
+	 * @param end The last cell of the path.
+	 * @return The path, with start on top, or null if there is none or either cell is blocked.
+	 */
 	public static Stack<Point> AStar(final AStarNode[][] map, final Point start, final Point end) {
 		int width = map.length;
 		int height = map[0].length;
-		
-		PriorityQueue<AStarNode> open_list = new PriorityQueue<AStarNode>(width * height);
-		ArrayList<AStarNode> closed_list = new ArrayList<AStarNode>();
-		open_list.add((map[start.x][start.y]));
-		while (!open_list.isEmpty()) {
-			AStarNode temp = open_list.remove();
-			closed_list.add(temp);
-			if (temp.location.equals(end)) {
-				Stack<Point> ret = new Stack<Point>();
-				AStarNode current_node = temp;
-				while (current_node.parent != null) {
-					ret.push(current_node.location);
-					current_node = current_node.parent;
-				}
-				ret.push(current_node.location);
-				return ret;
-			}
-			if (isPassable(map, temp.location.x - 1, temp.location.y) && !closed_list.contains(map[temp.location.x - 1][temp.location.y])) {
-				AStarNode westNode = map[temp.location.x - 1][temp.location.y];
-				if (open_list.contains(westNode)) {
-					if (westNode.g > temp.g + 10) {
-						westNode.g = temp.g + 10;
-						westNode.parent = temp;
-					}
-				} else {
-					westNode.parent = temp;
-					calcGHF(westNode, 10, end);
-					open_list.add(westNode);
+		Grid grid = new Grid(width, height);
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				if (!map[x][y].passable) {
+					grid.setPassable(x, y, false);
 				}
 			}
-			if (isPassable(map, temp.location.x - 1, temp.location.y - 1) && !closed_list.contains(map[temp.location.x - 1][temp.location.y - 1])) {
-				AStarNode northwestNode = map[temp.location.x - 1][temp.location.y - 1];
-				if (open_list.contains(northwestNode)) {
-					if (northwestNode.g > temp.g + 14) {
-						northwestNode.g = temp.g + 10;
-						northwestNode.parent = temp;
-					}
-				} else {
-					northwestNode.parent = temp;
-					calcGHF(northwestNode, 14, end);
-					open_list.add(northwestNode);
-				}
+		}
+
+		int[] path = AStar(grid, grid.index(start.x, start.y), grid.index(end.x, end.y));
+		if (path == null) {
+			return null;
+		}
+		Stack<Point> ret = new Stack<Point>();
+		for (int i = path.length - 1; i >= 0; i--) {
+			ret.push(map[grid.x(path[i])][grid.y(path[i])].location);
+		}
+		return ret;
+	}
+
+	/**
+	 * Finds a path between two cells of a grid, with the context of the
+	 * current thread.
+	 *
+	 * Runtime: O(n log n)
+	 * (where n is the number of cells searched, plus the number of
+	 * cells on the grid the first time the thread searches a grid this big)
+	 *
+	 * @param grid The grid.
+	 * @param start The number of the first cell of the path.
+	 * @param end The number of the last cell of the path.
+	 * @return The numbers of the cells on the path from start to end,
+	 * or null if there is none or either cell is blocked.
+	 */
+	public static int[] AStar(final Grid grid, final int start, final int end) {
+		return AStar(grid, start, end, CONTEXTS.get());
+	}
+
+	/**
+	 * Finds a path between two cells of a grid. The open list is an
+	 * indexed heap, so a cell whose g improves moves up in it. The g
+	 * and parent of every cell are kept in arrays numbered like the cells.
+	 *
+	 * Runtime: O(n log n)
+	 * (where n is the number of cells searched, plus the number of
+	 * cells on the grid if the context has to grow)
+	 *
+	 * @param grid The grid.
+	 * @param start The number of the first cell of the path.
+	 * @param end The number of the last cell of the path.
+	 * @param context The context to search with, used by no other search
+	 * at the same time.
+	 * @return The numbers of the cells on the path from start to end,
+	 * or null if there is none or either cell is blocked.
+	 */
+	public static int[] AStar(final Grid grid, final int start, final int end,
+			final SearchContext context) {
+		if (!grid.isPassable(start) || !grid.isPassable(end)) {
+			return null;
+		}
+		return search(grid, start, end, 0, 0, grid.width(), grid.height(), context);
+	}
+
+	/**
+	 * Finds a path between two cells of a rectangle of a grid, never
+	 * leaving the rectangle. Without an end, searches every cell of the
+	 * rectangle that can be reached, cheapest first, after which the
+	 * context holds the cost of the cheapest path to each of them.
+	 *
+	 * Runtime: O(n log n)
+	 * (where n is the number of cells searched, plus the number of
+	 * cells on the grid if the context has to grow)
+	 *
+	 * @param grid The grid.
+	 * @param start The number of the first cell of the path.
+	 * @param end The number of the last cell of the path, or -1 for none.
+	 * @param min_x The first column of the rectangle.
+	 * @param min_y The first row of the rectangle.
+	 * @param max_x The column after the last one of the rectangle.
+	 * @param max_y The row after the last one of the rectangle.
+	 * @param context The context to search with, used by no other search
+	 * at the same time.
+	 * @return The numbers of the cells on the path from start to end,
+	 * or null if there is none or no end.
+	 */
+	static int[] search(final Grid grid, final int start, final int end, final int min_x,
+			final int min_y, final int max_x, final int max_y, final SearchContext context) {
+		int width = grid.width();
+		// with no end, a heuristic of 0 makes the search visit cells cheapest first
+		int end_x = end == -1 ? 0 : grid.x(end);
+		int end_y = end == -1 ? 0 : grid.y(end);
+		int weight = end == -1 ? 0 : 1;
+
+		context.start(grid.size());
+		context.open(start, 0, -1, weight * heuristic(grid.x(start), grid.y(start), end_x, end_y));
+		int[] g = context.g;
+		while (!context.open_list.isEmpty()) {
+			int index = context.close();
+			if (index == end) {
+				return path(context.parent, end);
 			}
-			if (isPassable(map, temp.location.x, temp.location.y - 1) && !closed_list.contains(map[temp.location.x][temp.location.y - 1])) {
-				AStarNode northNode = map[temp.location.x][temp.location.y - 1];
-				if (open_list.contains(northNode)) {
-					if (northNode.g > temp.g + 10) {
-						northNode.g = temp.g + 10;
-						northNode.parent = temp;
-					}
-				} else {
-					northNode.parent = temp;
-					calcGHF(northNode, 10, end);
-					open_list.add(northNode);
+			int index_x = grid.x(index);
+			int index_y = grid.y(index);
+			for (int direction = 0; direction < COST.length; direction++) {
+				int x = index_x + DX[direction];
+				int y = index_y + DY[direction];
+				if (x < min_x || y < min_y || x >= max_x || y >= max_y) {
+					continue;
 				}
-			}
-			if (isPassable(map, temp.location.x + 1, temp.location.y - 1) && !closed_list.contains(map[temp.location.x + 1][temp.location.y - 1])) {
-				AStarNode northeastNode = map[temp.location.x + 1][temp.location.y - 1];
-				if (open_list.contains(northeastNode)) {
-					if (northeastNode.g > temp.g + 14) {
-						northeastNode.g = temp.g + 14;
-						northeastNode.parent = temp;
-					}
-				} else {
-					northeastNode.parent = temp;
-					calcGHF(northeastNode, 14, end);
-					open_list.add(northeastNode);
+				int neighbor = y * width + x;
+				if (!grid.isPassable(neighbor) || context.isClosed(neighbor)) {
+					continue;
 				}
-			}
-			if (isPassable(map, temp.location.x + 1, temp.location.y) && !closed_list.contains(map[temp.location.x + 1][temp.location.y])) {
-				AStarNode eastNode = map[temp.location.x + 1][temp.location.y];
-				if (open_list.contains(eastNode)) {
-					if (eastNode.g > temp.g + 10) {
-						eastNode.g = temp.g + 10;
-						eastNode.parent = temp;
-					}
-				} else {
-					eastNode.parent = temp;
-					calcGHF(eastNode, 10, end);
-					open_list.add(eastNode);
+				int neighbor_g = g[index] + COST[direction];
+				if (!context.isSeen(neighbor)) {
+					context.open(neighbor, neighbor_g, index,
+							neighbor_g + weight * heuristic(x, y, end_x, end_y));
+				} else if (g[neighbor] > neighbor_g) {
+					context.improve(neighbor, neighbor_g, index,
+							neighbor_g + weight * heuristic(x, y, end_x, end_y));
 				}
 			}
-			if (isPassable(map, temp.location.x + 1, temp.location.y + 1) && !closed_list.contains(map[temp.location.x + 1][temp.location.y + 1])) {
-				AStarNode southeastNode = map[temp.location.x + 1][temp.location.y + 1];
-				if (open_list.contains(southeastNode)) {
-					if (southeastNode.g > temp.g + 14) {
-						southeastNode.g = temp.g + 14;
-						southeastNode.parent = temp;
-					}
-				} else {
-					southeastNode.parent = temp;
-					calcGHF(southeastNode, 14, end);
-					open_list.add(southeastNode);
-				}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Finds a path between two cells of a grid with Jump Point Search,
+	 * with the context of the current thread.
+	 *
+	 * Runtime: O(m + n log n)
+	 * (where m is the number of cells scanned and n the number of jump
+	 * points searched, plus the number of cells on the grid the first
+	 * time the thread searches a grid this big)
+	 *
+	 * @param grid The grid.
+	 * @param start The number of the first cell of the path.
+	 * @param end The number of the last cell of the path.
+	 * @return The numbers of the cells on the path from start to end,
+	 * or null if there is none or either cell is blocked.
+	 */
+	public static int[] JumpPointSearch(final Grid grid, final int start, final int end) {
+		return JumpPointSearch(grid, start, end, CONTEXTS.get());
+	}
+
+	/**
+	 * Finds a path between two cells of a grid with Jump Point Search.
+	 * From each cell it only looks on in the direction it came from,
+	 * and in the directions a wall next to it forces open, and instead
+	 * of opening the next cell it scans ahead to the next cell where
+	 * a wall forces a turn (a jump point). Every other way to reach the
+	 * cells passed over costs no less, so the path found costs the same
+	 * as the one AStar finds.
+	 *
+	 * Runtime: O(m + n log n)
+	 * (where m is the number of cells scanned and n the number of jump
+	 * points searched, plus the number of cells on the grid if the
+	 * context has to grow)
+	 *
+	 * @param grid The grid.
+	 * @param start The number of the first cell of the path.
+	 * @param end The number of the last cell of the path.
+	 * @param context The context to search with, used by no other search
+	 * at the same time.
+	 * @return The numbers of the cells on the path from start to end,
+	 * or null if there is none or either cell is blocked.
+	 */
+	public static int[] JumpPointSearch(final Grid grid, final int start, final int end,
+			final SearchContext context) {
+		if (!grid.isPassable(start) || !grid.isPassable(end)) {
+			return null;
+		}
+		int end_x = grid.x(end);
+		int end_y = grid.y(end);
+		int[] directions = new int[2 * COST.length];
+
+		context.start(grid.size());
+		context.open(start, 0, -1, heuristic(grid.x(start), grid.y(start), end_x, end_y));
+		int[] g = context.g;
+		while (!context.open_list.isEmpty()) {
+			int index = context.close();
+			if (index == end) {
+				return fill(grid, path(context.parent, end));
 			}
-			if (isPassable(map, temp.location.x, temp.location.y + 1) && !closed_list.contains(map[temp.location.x][temp.location.y + 1])) {
-				AStarNode southNode = map[temp.location.x][temp.location.y + 1];
-				if (open_list.contains(southNode)) {
-					if (southNode.g > temp.g + 10) {
-						southNode.g = temp.g + 10;
-						southNode.parent = temp;
-					}
-				} else {
-					southNode.parent = temp;
-					calcGHF(southNode, 10, end);
-					open_list.add(southNode);
+			int index_x = grid.x(index);
+			int index_y = grid.y(index);
+			int count = directions(grid, index_x, index_y, context.parent[index], directions);
+			for (int i = 0; i < count; i += 2) {
+				int jump_point = jump(grid, index_x + directions[i], index_y + directions[i + 1],
+						directions[i], directions[i + 1], end);
+				if (jump_point == -1 || context.isClosed(jump_point)) {
+					continue;
 				}
-			}
-			if (isPassable(map, temp.location.x - 1, temp.location.y + 1) && !closed_list.contains(map[temp.location.x - 1][temp.location.y + 1])) {
-				AStarNode southwestNode = map[temp.location.x - 1][temp.location.y + 1];
-				if (open_list.contains(southwestNode)) {
-					if (southwestNode.g > temp.g + 14) {
-						southwestNode.g = temp.g + 14;
-						southwestNode.parent = temp;
-					}
-				} else {
-					southwestNode.parent = temp;
-					calcGHF(southwestNode, 14, end);
-					open_list.add(southwestNode);
+				int x = grid.x(jump_point);
+				int y = grid.y(jump_point);
+				int jump_g = g[index] + heuristic(index_x, index_y, x, y);
+				if (!context.isSeen(jump_point)) {
+					context.open(jump_point, jump_g, index, jump_g + heuristic(x, y, end_x, end_y));
+				} else if (g[jump_point] > jump_g) {
+					context.improve(jump_point, jump_g, index, jump_g + heuristic(x, y, end_x, end_y));
 				}
 			}
-				
-				
 		}
-		
+
 		return null;
 	}
-	
-	private static void calcGHF(final AStarNode node, final int gCost, final Point end) {
-		if (node.parent != null) {
-			node.g = node.parent.g + gCost;
-			node.h = Math.abs(end.x - node.location.x) * 10 + Math.abs(end.y - node.location.y) * 10;
-			node.f = node.g + node.h;
+
+	/**
+	 * Lists the directions to look in from a cell: every direction from
+	 * the start, otherwise the direction the cell was reached in, the
+	 * straight parts of it when that is diagonal, and each diagonal a
+	 * blocked cell beside the path opens up.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param grid The grid.
+	 * @param x The column of the cell.
+	 * @param y The row of the cell.
+	 * @param parent The number of the cell it was reached from, or -1.
+	 * @param directions Filled with the steps along x and y of each direction.
+	 * @return The number of values put in directions, twice the number
+	 * of directions.
+	 */
+	private static int directions(final Grid grid, final int x, final int y, final int parent,
+			final int[] directions) {
+		int count = 0;
+		if (parent == -1) {
+			for (int direction = 0; direction < COST.length; direction++) {
+				directions[count++] = DX[direction];
+				directions[count++] = DY[direction];
+			}
+			return count;
 		}
+		int dx = Integer.signum(x - grid.x(parent));
+		int dy = Integer.signum(y - grid.y(parent));
+		directions[count++] = dx;
+		directions[count++] = dy;
+		if (dx != 0 && dy != 0) {
+			directions[count++] = dx;
+			directions[count++] = 0;
+			directions[count++] = 0;
+			directions[count++] = dy;
+			if (!grid.isPassable(x - dx, y)) {
+				directions[count++] = -dx;
+				directions[count++] = dy;
+			}
+			if (!grid.isPassable(x, y - dy)) {
+				directions[count++] = dx;
+				directions[count++] = -dy;
+			}
+		} else if (dx != 0) {
+			if (!grid.isPassable(x, y + 1)) {
+				directions[count++] = dx;
+				directions[count++] = 1;
+			}
+			if (!grid.isPassable(x, y - 1)) {
+				directions[count++] = dx;
+				directions[count++] = -1;
+			}
+		} else {
+			if (!grid.isPassable(x + 1, y)) {
+				directions[count++] = 1;
+				directions[count++] = dy;
+			}
+			if (!grid.isPassable(x - 1, y)) {
+				directions[count++] = -1;
+				directions[count++] = dy;
+			}
+		}
+		return count;
 	}
-	
-	private static boolean isPassable(final AStarNode[][] map, final int x, final int y) {
-		return x >= 0 && y >= 0 && 
-				x < map.length && y < map[0].length &&
-				map[x][y].passable;
+
+	/**
+	 * Scans from a cell in one direction for the next jump point: the
+	 * end, a cell beside which a wall opens up a diagonal that no
+	 * shorter path reaches, or, when scanning diagonally, a cell from
+	 * which a straight scan finds one.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the number of cells scanned, divided by 64 for
+	 * straight scans)
+	 *
+	 * @param grid The grid.
+	 * @param the_x The column of the first cell to look at.
+	 * @param the_y The row of the first cell to look at.
+	 * @param dx The step along x, -1, 0 or 1.
+	 * @param dy The step along y, -1, 0 or 1.
+	 * @param end The number of the end.
+	 * @return The number of the jump point, or -1 if a blocked cell or
+	 * the edge of the grid comes first.
+	 */
+	private static int jump(final Grid grid, final int the_x, final int the_y, final int dx,
+			final int dy, final int end) {
+		if (dx == 0 || dy == 0) {
+			return jumpStraight(grid, the_x, the_y, dx, dy, end);
+		}
+		int x = the_x;
+		int y = the_y;
+		while (grid.isPassable(x, y)) {
+			int cell = grid.index(x, y);
+			if (cell == end
+					|| grid.isPassable(x - dx, y + dy) && !grid.isPassable(x - dx, y)
+					|| grid.isPassable(x + dx, y - dy) && !grid.isPassable(x, y - dy)
+					|| jumpStraight(grid, x + dx, y, dx, 0, end) != -1
+					|| jumpStraight(grid, x, y + dy, 0, dy, end) != -1) {
+				return cell;
+			}
+			x += dx;
+			y += dy;
+		}
+		return -1;
 	}
-	
-	
-	
+
+	/**
+	 * Scans along a row or a column for the next jump point, 64 cells
+	 * at a time. A cell is a jump point when it is the end, or when a
+	 * cell beside it is blocked and the one after that is passable.
+	 *
+	 * Runtime: O(n / 64)
+	 * (where n is the number of cells scanned)
+	 *
+	 * @param grid The grid.
+	 * @param the_x The column of the first cell to look at.
+	 * @param the_y The row of the first cell to look at.
+	 * @param dx The step along x; 0 to scan a column.
+	 * @param dy The step along y; 0 to scan a row.
+	 * @param end The number of the end.
+	 * @return The number of the jump point, or -1 if a blocked cell or
+	 * the edge of the grid comes first.
+	 */
+	private static int jumpStraight(final Grid grid, final int the_x, final int the_y,
+			final int dx, final int dy, final int end) {
+		int x = the_x;
+		int y = the_y;
+		int end_x = grid.x(end);
+		int end_y = grid.y(end);
+		while (true) {
+			long cells;
+			long stops;
+			int distance;
+			if (dy == 0) {
+				cells = grid.row(x, y, dx);
+				stops = ~grid.row(x, y - 1, dx) & grid.row(x + dx, y - 1, dx)
+						| ~grid.row(x, y + 1, dx) & grid.row(x + dx, y + 1, dx);
+				distance = end_y == y ? (end_x - x) * dx : -1;
+			} else {
+				cells = grid.column(x, y, dy);
+				stops = ~grid.column(x - 1, y, dy) & grid.column(x - 1, y + dy, dy)
+						| ~grid.column(x + 1, y, dy) & grid.column(x + 1, y + dy, dy);
+				distance = end_x == x ? (end_y - y) * dy : -1;
+			}
+			stops |= ~cells;
+			if (distance >= 0 && distance < 64) {
+				stops |= 1L << distance;
+			}
+			if (stops != 0) {
+				int i = Long.numberOfTrailingZeros(stops);
+				return (cells >>> i & 1) == 0 ? -1 : grid.index(x + i * dx, y + i * dy);
+			}
+			x += 64 * dx;
+			y += 64 * dy;
+		}
+	}
+
+	/**
+	 * Fills in the cells between the jump points of a path, each of
+	 * which is straight or diagonally in line with the one before.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the filled in path)
+	 *
+	 * @param grid The grid.
+	 * @param jump_points The numbers of the jump points on the path.
+	 * @return The numbers of every cell on the path.
+	 */
+	private static int[] fill(final Grid grid, final int[] jump_points) {
+		int length = 1;
+		for (int i = 1; i < jump_points.length; i++) {
+			length += Math.max(Math.abs(grid.x(jump_points[i]) - grid.x(jump_points[i - 1])),
+					Math.abs(grid.y(jump_points[i]) - grid.y(jump_points[i - 1])));
+		}
+		int[] path = new int[length];
+		path[0] = jump_points[0];
+		int length_so_far = 1;
+		for (int i = 1; i < jump_points.length; i++) {
+			int x = grid.x(jump_points[i - 1]);
+			int y = grid.y(jump_points[i - 1]);
+			int dx = Integer.signum(grid.x(jump_points[i]) - x);
+			int dy = Integer.signum(grid.y(jump_points[i]) - y);
+			while (grid.index(x, y) != jump_points[i]) {
+				x += dx;
+				y += dy;
+				path[length_so_far++] = grid.index(x, y);
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * Estimates the cost from a cell to the end: the cost of the
+	 * shortest path with no blocked cells, as many diagonal steps as
+	 * fit and straight steps for the rest. Never more than the real
+	 * cost, so the path found is a cheapest one.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param x The column of the cell.
+	 * @param y The row of the cell.
+	 * @param end_x The column of the end.
+	 * @param end_y The row of the end.
+	 * @return The estimate.
+	 */
+	static int heuristic(final int x, final int y, final int end_x, final int end_y) {
+		int dx = Math.abs(end_x - x);
+		int dy = Math.abs(end_y - y);
+		return 10 * Math.max(dx, dy) + 4 * Math.min(dx, dy);
+	}
+
+	/**
+	 * Follows the parents back from the end of a path.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the path)
+	 *
+	 * @param parent The parent of each cell, -1 for the start.
+	 * @param end The number of the last cell of the path.
+	 * @return The numbers of the cells on the path, in order.
+	 */
+	static int[] path(final int[] parent, final int end) {
+		int length = 0;
+		for (int cell = end; cell != -1; cell = parent[cell]) {
+			length++;
+		}
+		int[] path = new int[length];
+		for (int cell = end; cell != -1; cell = parent[cell]) {
+			path[--length] = cell;
+		}
+		return path;
+	}
+
 }
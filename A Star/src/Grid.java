@@ -0,0 +1,237 @@
+/**
+ * A map of cells that are either passable or blocked, one bit per
+ * cell. Cells are numbered y * width + x, so the cells of a row are
+ * next to each other and a search can step between them by adding
+ * to the number. The bits are also kept column by column, so that a
+ * search can read 64 cells of a row or of a column at once.
+ *
+ * Searches only read a grid, so any number of threads may search the
+ * same one at once. Cells may be changed only while no search runs on
+ * the grid, and before the threads that search it next are started or
+ * handed their work, so they see the change.
+ *
+ */
+public class Grid {
+
+	/**
+	 * Number of columns.
+	 */
+	private final int width;
+
+	/**
+	 * Number of rows.
+	 */
+	private final int height;
+
+	/**
+	 * One bit per cell, set when the cell is passable, row by row.
+	 */
+	private final long[] passable;
+
+	/**
+	 * The same bits, column by column.
+	 */
+	private final long[] columns;
+
+	/**
+	 * Creates a new grid with every cell passable.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the number of cells)
+	 *
+	 * @param the_width The number of columns.
+	 * @param the_height The number of rows.
+	 */
+	public Grid(final int the_width, final int the_height) {
+		if (the_width <= 0 || the_height <= 0 || (long) the_width * the_height > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Bad size " + the_width + "x" + the_height);
+		}
+		width = the_width;
+		height = the_height;
+		passable = new long[(size() + 63) >>> 6];
+		columns = new long[passable.length];
+		for (int i = 0; i < passable.length; i++) {
+			passable[i] = -1L;
+			columns[i] = -1L;
+		}
+	}
+
+	/**
+	 * Runtime: O(1)
+	 *
+	 * @return The number of columns.
+	 */
+	public int width() {
+		return width;
+	}
+
+	/**
+	 * Runtime: O(1)
+	 *
+	 * @return The number of rows.
+	 */
+	public int height() {
+		return height;
+	}
+
+	/**
+	 * Runtime: O(1)
+	 *
+	 * @return The number of cells.
+	 */
+	public int size() {
+		return width * height;
+	}
+
+	/**
+	 * Runtime: O(1)
+	 *
+	 * @param x The column.
+	 * @param y The row.
+	 * @return The number of the cell.
+	 */
+	public int index(final int x, final int y) {
+		return y * width + x;
+	}
+
+	/**
+	 * Runtime: O(1)
+	 *
+	 * @param index The number of a cell.
+	 * @return The column of the cell.
+	 */
+	public int x(final int index) {
+		return index % width;
+	}
+
+	/**
+	 * Runtime: O(1)
+	 *
+	 * @param index The number of a cell.
+	 * @return The row of the cell.
+	 */
+	public int y(final int index) {
+		return index / width;
+	}
+
+	/**
+	 * Runtime: O(1)
+	 *
+	 * @param x The column.
+	 * @param y The row.
+	 * @return Whether the cell is on the grid and passable.
+	 */
+	public boolean isPassable(final int x, final int y) {
+		return x >= 0 && y >= 0 && x < width && y < height && isPassable(y * width + x);
+	}
+
+	/**
+	 * Runtime: O(1)
+	 *
+	 * @param index The number of a cell on the grid.
+	 * @return Whether the cell is passable.
+	 */
+	public boolean isPassable(final int index) {
+		return (passable[index >>> 6] & 1L << index) != 0;
+	}
+
+	/**
+	 * Makes a cell passable or blocked.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param x The column.
+	 * @param y The row.
+	 * @param the_passable Whether the cell is passable.
+	 */
+	public void setPassable(final int x, final int y, final boolean the_passable) {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			throw new IndexOutOfBoundsException("(" + x + ", " + y + ")");
+		}
+		int index = y * width + x;
+		int column_index = x * height + y;
+		if (the_passable) {
+			passable[index >>> 6] |= 1L << index;
+			columns[column_index >>> 6] |= 1L << column_index;
+		} else {
+			passable[index >>> 6] &= ~(1L << index);
+			columns[column_index >>> 6] &= ~(1L << column_index);
+		}
+	}
+
+	/**
+	 * Reads whether 64 cells of a row are passable, starting at a cell
+	 * and going in a direction. Cells off the grid count as blocked.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param x The column of the first cell, which may be off the grid.
+	 * @param y The row, which may be off the grid.
+	 * @param dx 1 to read to the right, -1 to read to the left.
+	 * @return Bit i set when cell (x + i * dx, y) is passable.
+	 */
+	long row(final int x, final int y, final int dx) {
+		if (y < 0 || y >= height) {
+			return 0;
+		}
+		return dx > 0 ? window(passable, y, width, x) : Long.reverse(window(passable, y, width, x - 63));
+	}
+
+	/**
+	 * Reads whether 64 cells of a column are passable, starting at a
+	 * cell and going in a direction. Cells off the grid count as blocked.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param x The column, which may be off the grid.
+	 * @param y The row of the first cell, which may be off the grid.
+	 * @param dy 1 to read downwards, -1 to read upwards.
+	 * @return Bit i set when cell (x, y + i * dy) is passable.
+	 */
+	long column(final int x, final int y, final int dy) {
+		if (x < 0 || x >= width) {
+			return 0;
+		}
+		return dy > 0 ? window(columns, x, height, y) : Long.reverse(window(columns, x, height, y - 63));
+	}
+
+	/**
+	 * Reads 64 bits of one line (a row or a column) of bits.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param bits The bits, line after line.
+	 * @param line The number of the line.
+	 * @param length The number of bits in each line.
+	 * @param from The position in the line of the first bit to read,
+	 * which may be before the start or past the end.
+	 * @return Bit i set when bit from + i of the line is set and in the line.
+	 */
+	private static long window(final long[] bits, final int line, final int length, final int from) {
+		if (from >= length || from <= -64) {
+			return 0;
+		}
+		int first = Math.max(from, 0);
+		int index = line * length + first;
+		long window = bits[index >>> 6] >>> index;
+		if ((index & 63) != 0 && (index >>> 6) + 1 < bits.length) {
+			window |= bits[(index >>> 6) + 1] << -index;
+		}
+		if (length - first < 64) {
+			window &= (1L << (length - first)) - 1;
+		}
+		return window << (first - from);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				sb.append(isPassable(x, y) ? '.' : '#');
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+}
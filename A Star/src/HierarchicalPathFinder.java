@@ -0,0 +1,623 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Finds paths on a Grid in two levels (HPA*). The grid is cut into
+ * square clusters. Where passable cells of two neighboring clusters
+ * touch, one or two pairs of them are picked as entrances, and the
+ * cost of the cheapest path inside each cluster between every two of
+ * its entrances is worked out once. A path is then found by searching
+ * only the entrances, from the start to the end, and refined into
+ * cells by searching inside one cluster at a time.
+ *
+ * The paths found are not always the cheapest, since they have to go
+ * through the entrances, but they are found much faster on big maps,
+ * and there is one whenever there is a path at all.
+ *
+ * Searches only read the finder, so any number of threads may search
+ * with the same one at once. Cells may be changed, through setPassable
+ * only, while no search runs.
+ *
+ */
+public class HierarchicalPathFinder {
+
+	/**
+	 * Number of rows and columns of a cluster, unless given.
+	 */
+	public static final int DEFAULT_CLUSTER_SIZE = 32;
+
+	/**
+	 * Shortest stretch of cells touching across a border that gets an
+	 * entrance at each end instead of one in the middle.
+	 */
+	private static final int LONG_ENTRANCE = 6;
+
+	/**
+	 * The context of the searches on each thread.
+	 */
+	private static final ThreadLocal<SearchContext> CONTEXTS = new ThreadLocal<SearchContext>() {
+		@Override
+		protected SearchContext initialValue() {
+			return new SearchContext();
+		}
+	};
+
+	/**
+	 * The grid.
+	 */
+	private final Grid grid;
+
+	/**
+	 * Number of rows and columns of a cluster.
+	 */
+	private final int cluster_size;
+
+	/**
+	 * Number of clusters in a row.
+	 */
+	private final int columns;
+
+	/**
+	 * Number of clusters in a column.
+	 */
+	private final int rows;
+
+	/**
+	 * The clusters, numbered like the cells of a grid.
+	 */
+	private final Cluster[] clusters;
+
+	/**
+	 * Creates a new finder for a grid, with clusters of the default size.
+	 *
+	 * Runtime: O(n e log c)
+	 * (where n is the number of cells, e the number of entrances of a
+	 * cluster and c the number of cells in a cluster)
+	 *
+	 * @param the_grid The grid, which from now on should be changed only
+	 * through this finder.
+	 */
+	public HierarchicalPathFinder(final Grid the_grid) {
+		this(the_grid, DEFAULT_CLUSTER_SIZE);
+	}
+
+	/**
+	 * Creates a new finder for a grid.
+	 *
+	 * Runtime: O(n e log c)
+	 * (where n is the number of cells, e the number of entrances of a
+	 * cluster and c the number of cells in a cluster)
+	 *
+	 * @param the_grid The grid, which from now on should be changed only
+	 * through this finder.
+	 * @param the_cluster_size The number of rows and columns of a cluster.
+	 */
+	public HierarchicalPathFinder(final Grid the_grid, final int the_cluster_size) {
+		if (the_cluster_size < 2) {
+			throw new IllegalArgumentException("Clusters of size " + the_cluster_size);
+		}
+		grid = the_grid;
+		cluster_size = the_cluster_size;
+		columns = (grid.width() + cluster_size - 1) / cluster_size;
+		rows = (grid.height() + cluster_size - 1) / cluster_size;
+		clusters = new Cluster[columns * rows];
+		for (int y = 0; y < rows; y++) {
+			for (int x = 0; x < columns; x++) {
+				clusters[y * columns + x] = new Cluster(x * cluster_size, y * cluster_size,
+						Math.min((x + 1) * cluster_size, grid.width()),
+						Math.min((y + 1) * cluster_size, grid.height()));
+			}
+		}
+		SearchContext context = CONTEXTS.get();
+		for (int i = 0; i < clusters.length; i++) {
+			build(i, context);
+		}
+	}
+
+	/**
+	 * Runtime: O(1)
+	 *
+	 * @return The grid.
+	 */
+	public Grid grid() {
+		return grid;
+	}
+
+	/**
+	 * Runtime: O(n)
+	 * (where n is the number of clusters)
+	 *
+	 * @return The number of entrances of all clusters.
+	 */
+	public int entrances() {
+		int entrances = 0;
+		for (int i = 0; i < clusters.length; i++) {
+			entrances += clusters[i].cells.length;
+		}
+		return entrances;
+	}
+
+	/**
+	 * Makes a cell passable or blocked, and works out again the
+	 * entrances and paths of its cluster. When the cell is on the edge
+	 * of its cluster, the entrances there change on both sides, so the
+	 * cluster or clusters across that edge are worked out again too.
+	 *
+	 * Runtime: O(e c log c)
+	 * (where e is the number of entrances of a cluster and c the
+	 * number of cells in a cluster)
+	 *
+	 * @param x The column.
+	 * @param y The row.
+	 * @param the_passable Whether the cell is passable.
+	 */
+	public void setPassable(final int x, final int y, final boolean the_passable) {
+		grid.setPassable(x, y, the_passable);
+		int cluster_x = x / cluster_size;
+		int cluster_y = y / cluster_size;
+		Cluster cluster = clusters[cluster_y * columns + cluster_x];
+		SearchContext context = CONTEXTS.get();
+		build(cluster_y * columns + cluster_x, context);
+		for (int direction = 0; direction < AStarPathFinder.DX.length; direction++) {
+			int dx = AStarPathFinder.DX[direction];
+			int dy = AStarPathFinder.DY[direction];
+			int neighbor_x = cluster_x + dx;
+			int neighbor_y = cluster_y + dy;
+			if (neighbor_x < 0 || neighbor_y < 0 || neighbor_x >= columns || neighbor_y >= rows
+					|| dx < 0 && x != cluster.min_x || dx > 0 && x != cluster.max_x - 1
+					|| dy < 0 && y != cluster.min_y || dy > 0 && y != cluster.max_y - 1) {
+				continue;
+			}
+			build(neighbor_y * columns + neighbor_x, context);
+		}
+	}
+
+	/**
+	 * Finds a path between two cells, with the context of the current
+	 * thread.
+	 *
+	 * Runtime: O(e log e + k c log c)
+	 * (where e is the number of entrances searched, k the number of
+	 * clusters the path goes through and c the number of cells in a
+	 * cluster)
+	 *
+	 * @param start The number of the first cell of the path.
+	 * @param end The number of the last cell of the path.
+	 * @return The numbers of the cells on the path from start to end,
+	 * or null if there is none or either cell is blocked.
+	 */
+	public int[] findPath(final int start, final int end) {
+		return findPath(start, end, CONTEXTS.get());
+	}
+
+	/**
+	 * Finds a path between two cells. First works out the cost from
+	 * the start to each entrance of its cluster and from each entrance
+	 * of the end's cluster to the end, then searches the entrances with
+	 * A*, and then searches inside each cluster on the way for the
+	 * cells between two entrances.
+	 *
+	 * Runtime: O(e log e + k c log c)
+	 * (where e is the number of entrances searched, k the number of
+	 * clusters the path goes through and c the number of cells in a
+	 * cluster)
+	 *
+	 * @param start The number of the first cell of the path.
+	 * @param end The number of the last cell of the path.
+	 * @param context The context to search with, used by no other search
+	 * at the same time.
+	 * @return The numbers of the cells on the path from start to end,
+	 * or null if there is none or either cell is blocked.
+	 */
+	public int[] findPath(final int start, final int end, final SearchContext context) {
+		if (!grid.isPassable(start) || !grid.isPassable(end)) {
+			return null;
+		}
+		Cluster start_cluster = clusters[clusterOf(start)];
+		Cluster end_cluster = clusters[clusterOf(end)];
+		int[] start_costs = costs(start_cluster, start, context);
+		int[] end_costs = costs(end_cluster, end, context);
+		int direct = start_cluster == end_cluster ? context.cost(start) : -1;
+
+		int end_x = grid.x(end);
+		int end_y = grid.y(end);
+		context.start(grid.size());
+		context.open(start, 0, -1, AStarPathFinder.heuristic(grid.x(start), grid.y(start), end_x, end_y));
+		int[] g = context.g;
+		while (!context.open_list.isEmpty()) {
+			int cell = context.close();
+			if (cell == end) {
+				return refine(AStarPathFinder.path(context.parent, end), context);
+			}
+			if (cell == start) {
+				for (int j = 0; j < start_costs.length; j++) {
+					if (start_costs[j] >= 0) {
+						relax(start_cluster.cells[j], start_costs[j], cell, end_x, end_y, context);
+					}
+				}
+				if (direct >= 0) {
+					relax(end, direct, cell, end_x, end_y, context);
+				}
+			}
+			Cluster cluster = clusters[clusterOf(cell)];
+			int i = indexOf(cluster.cells, cell);
+			if (i == -1) {
+				continue;
+			}
+			int entrances = cluster.cells.length;
+			for (int j = 0; j < entrances; j++) {
+				int cost = cluster.costs[i * entrances + j];
+				if (j != i && cost >= 0) {
+					relax(cluster.cells[j], g[cell] + cost, cell, end_x, end_y, context);
+				}
+			}
+			int[] links = cluster.links[i];
+			for (int j = 0; j < links.length; j += 2) {
+				relax(links[j], g[cell] + links[j + 1], cell, end_x, end_y, context);
+			}
+			if (cluster == end_cluster && end_costs[i] >= 0) {
+				relax(end, g[cell] + end_costs[i], cell, end_x, end_y, context);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Opens a cell, or lowers its cost if the new path to it is cheaper.
+	 *
+	 * Runtime: O(log n)
+	 * (where n is the number of cells on the open list)
+	 *
+	 * @param cell The number of the cell.
+	 * @param g The cost of the new path to the cell.
+	 * @param parent The cell the new path reaches it from.
+	 * @param end_x The column of the end.
+	 * @param end_y The row of the end.
+	 * @param context The context of the search.
+	 */
+	private void relax(final int cell, final int g, final int parent, final int end_x,
+			final int end_y, final SearchContext context) {
+		if (context.isClosed(cell)) {
+			return;
+		}
+		int f = g + AStarPathFinder.heuristic(grid.x(cell), grid.y(cell), end_x, end_y);
+		if (!context.isSeen(cell)) {
+			context.open(cell, g, parent, f);
+		} else if (context.g[cell] > g) {
+			context.improve(cell, g, parent, f);
+		}
+	}
+
+	/**
+	 * Turns a path of entrances into a path of cells. Two entrances in
+	 * a row are either in the same cluster, and are joined by a search
+	 * inside it, or next to each other across a border.
+	 *
+	 * Runtime: O(k c log c)
+	 * (where k is the number of clusters the path goes through and c
+	 * the number of cells in a cluster)
+	 *
+	 * @param entrances The numbers of the start, the entrances and the end.
+	 * @param context The context to search with.
+	 * @return The numbers of every cell on the path.
+	 */
+	private int[] refine(final int[] entrances, final SearchContext context) {
+		ArrayList<int[]> pieces = new ArrayList<int[]>();
+		int length = 1;
+		for (int i = 1; i < entrances.length; i++) {
+			int from = entrances[i - 1];
+			int to = entrances[i];
+			int cluster = clusterOf(from);
+			int[] piece;
+			if (cluster != clusterOf(to)) {
+				piece = new int[] {from, to};
+			} else {
+				Cluster c = clusters[cluster];
+				piece = AStarPathFinder.search(grid, from, to, c.min_x, c.min_y, c.max_x, c.max_y, context);
+				if (piece == null) {
+					throw new IllegalStateException("No path from " + from + " to " + to
+							+ " inside their cluster");
+				}
+			}
+			pieces.add(piece);
+			length += piece.length - 1;
+		}
+		int[] path = new int[length];
+		path[0] = entrances[0];
+		int length_so_far = 1;
+		for (int[] piece : pieces) {
+			System.arraycopy(piece, 1, path, length_so_far, piece.length - 1);
+			length_so_far += piece.length - 1;
+		}
+		return path;
+	}
+
+	/**
+	 * Works out the cost of the cheapest path inside a cluster from a
+	 * cell to each entrance of the cluster. Afterwards the context
+	 * holds the cost to every other cell of the cluster too.
+	 *
+	 * Runtime: O(c log c)
+	 * (where c is the number of cells in a cluster)
+	 *
+	 * @param cluster The cluster.
+	 * @param cell The number of the cell, in the cluster.
+	 * @param context The context to search with.
+	 * @return The cost to each entrance, -1 where there is no path.
+	 */
+	private int[] costs(final Cluster cluster, final int cell, final SearchContext context) {
+		AStarPathFinder.search(grid, cell, -1, cluster.min_x, cluster.min_y, cluster.max_x,
+				cluster.max_y, context);
+		int[] costs = new int[cluster.cells.length];
+		for (int j = 0; j < costs.length; j++) {
+			costs[j] = context.cost(cluster.cells[j]);
+		}
+		return costs;
+	}
+
+	/**
+	 * Works out the entrances of a cluster, where they lead, and the
+	 * costs of the paths between them.
+	 *
+	 * Runtime: O(e c log c)
+	 * (where e is the number of entrances of the cluster and c the
+	 * number of cells in a cluster)
+	 *
+	 * @param index The number of the cluster.
+	 * @param context The context to search with.
+	 */
+	private void build(final int index, final SearchContext context) {
+		Cluster cluster = clusters[index];
+		int cluster_x = index % columns;
+		int cluster_y = index / columns;
+		ArrayList<int[]> transitions = new ArrayList<int[]>();
+		for (int direction = 0; direction < AStarPathFinder.DX.length; direction++) {
+			int dx = AStarPathFinder.DX[direction];
+			int dy = AStarPathFinder.DY[direction];
+			int neighbor_x = cluster_x + dx;
+			int neighbor_y = cluster_y + dy;
+			if (neighbor_x >= 0 && neighbor_y >= 0 && neighbor_x < columns && neighbor_y < rows) {
+				transitions(cluster, dx, dy, transitions);
+			}
+		}
+
+		int[] cells = new int[transitions.size()];
+		int[] counts = new int[transitions.size()];
+		int entrances = 0;
+		for (int[] transition : transitions) {
+			int i = indexOf(cells, entrances, transition[0]);
+			if (i == -1) {
+				i = entrances++;
+				cells[i] = transition[0];
+			}
+			counts[i]++;
+		}
+		cells = Arrays.copyOf(cells, entrances);
+		int[][] links = new int[entrances][];
+		for (int i = 0; i < entrances; i++) {
+			links[i] = new int[2 * counts[i]];
+			counts[i] = 0;
+		}
+		for (int[] transition : transitions) {
+			int i = indexOf(cells, entrances, transition[0]);
+			links[i][counts[i]++] = transition[1];
+			links[i][counts[i]++] = transition[2];
+		}
+
+		int[] costs = new int[entrances * entrances];
+		cluster.cells = cells;
+		for (int i = 0; i < entrances; i++) {
+			System.arraycopy(costs(cluster, cells[i], context), 0, costs, i * entrances, entrances);
+		}
+		cluster.links = links;
+		cluster.costs = costs;
+	}
+
+	/**
+	 * Lists the entrances from a cluster to its neighbor in a direction,
+	 * each as the cell inside, the cell outside and the cost of the step
+	 * between them. Across a corner, that is the corner cell. Across an
+	 * edge, the passable cells along each side of it form runs, and
+	 * each run inside gets one or two entrances for each run outside it
+	 * touches: at both ends of where they lie side by side if that is
+	 * long, in the middle if it is short, and at the diagonal step
+	 * between them if they only meet at a corner. A run is connected
+	 * along its side, so that is enough to get from any of its cells to
+	 * any of the other's. The entrances depend only on the cells, so
+	 * the neighbor finds the same ones from its side.
+	 *
+	 * Runtime: O(n + r^2)
+	 * (where n is the length of the edge and r the number of runs on it)
+	 *
+	 * @param cluster The cluster.
+	 * @param dx The direction of the neighbor along x, -1, 0 or 1.
+	 * @param dy The direction of the neighbor along y, -1, 0 or 1.
+	 * @param transitions The list to add each entrance to.
+	 */
+	private void transitions(final Cluster cluster, final int dx, final int dy,
+			final ArrayList<int[]> transitions) {
+		int x = dx < 0 ? cluster.min_x : cluster.max_x - 1;
+		int y = dy < 0 ? cluster.min_y : cluster.max_y - 1;
+		if (dx != 0 && dy != 0) {
+			if (grid.isPassable(x, y) && grid.isPassable(x + dx, y + dy)) {
+				transitions.add(new int[] {grid.index(x, y), grid.index(x + dx, y + dy), 14});
+			}
+			return;
+		}
+
+		// step along the edge, from its first cell inside
+		int step_x = dx == 0 ? 1 : 0;
+		int step_y = dy == 0 ? 1 : 0;
+		int first_x = dx == 0 ? cluster.min_x : x;
+		int first_y = dy == 0 ? cluster.min_y : y;
+		int length = dx == 0 ? cluster.max_x - cluster.min_x : cluster.max_y - cluster.min_y;
+		int[] inside = runs(first_x, first_y, step_x, step_y, length);
+		int[] outside = runs(first_x + dx, first_y + dy, step_x, step_y, length);
+		for (int i = 0; i < inside.length; i += 2) {
+			for (int j = 0; j < outside.length; j += 2) {
+				int low = Math.max(inside[i], outside[j]);
+				int high = Math.min(inside[i + 1], outside[j + 1]);
+				int from;
+				int to;
+				if (low <= high && high - low + 1 >= LONG_ENTRANCE) {
+					transitions.add(new int[] {grid.index(first_x + low * step_x, first_y + low * step_y),
+							grid.index(first_x + low * step_x + dx, first_y + low * step_y + dy), 10});
+					from = high;
+					to = high;
+				} else if (low <= high) {
+					from = (low + high) / 2;
+					to = from;
+				} else if (inside[i + 1] + 1 == outside[j]) {
+					from = inside[i + 1];
+					to = outside[j];
+				} else if (outside[j + 1] + 1 == inside[i]) {
+					from = inside[i];
+					to = outside[j + 1];
+				} else {
+					continue;
+				}
+				transitions.add(new int[] {grid.index(first_x + from * step_x, first_y + from * step_y),
+						grid.index(first_x + to * step_x + dx, first_y + to * step_y + dy),
+						from == to ? 10 : 14});
+			}
+		}
+	}
+
+	/**
+	 * Finds the runs of passable cells along a line.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the line)
+	 *
+	 * @param x The column of the first cell.
+	 * @param y The row of the first cell.
+	 * @param dx The step along x.
+	 * @param dy The step along y.
+	 * @param length The number of cells on the line.
+	 * @return The position on the line of the first and last cell of
+	 * each run, one run after the other.
+	 */
+	private int[] runs(final int x, final int y, final int dx, final int dy, final int length) {
+		int[] runs = new int[length + 1];
+		int count = 0;
+		for (int i = 0; i < length; i++) {
+			if (!grid.isPassable(x + i * dx, y + i * dy)) {
+				continue;
+			}
+			if (count == 0 || runs[count - 1] != i - 1) {
+				runs[count++] = i;
+				runs[count++] = i;
+			} else {
+				runs[count - 1] = i;
+			}
+		}
+		return Arrays.copyOf(runs, count);
+	}
+
+	/**
+	 * Runtime: O(1)
+	 *
+	 * @param cell The number of a cell.
+	 * @return The number of its cluster.
+	 */
+	private int clusterOf(final int cell) {
+		return grid.y(cell) / cluster_size * columns + grid.x(cell) / cluster_size;
+	}
+
+	/**
+	 * Runtime: O(n)
+	 * (where n is the length of the array)
+	 *
+	 * @param cells The numbers of some cells.
+	 * @param cell The number of a cell.
+	 * @return The position of the cell in the array, or -1.
+	 */
+	private static int indexOf(final int[] cells, final int cell) {
+		return indexOf(cells, cells.length, cell);
+	}
+
+	/**
+	 * Runtime: O(n)
+	 * (where n is the given length)
+	 *
+	 * @param cells The numbers of some cells.
+	 * @param length The number of cells to look at.
+	 * @param cell The number of a cell.
+	 * @return The position of the cell in the first length cells of the
+	 * array, or -1.
+	 */
+	private static int indexOf(final int[] cells, final int length, final int cell) {
+		for (int i = 0; i < length; i++) {
+			if (cells[i] == cell) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * A rectangle of the grid and its entrances.
+	 */
+	private static final class Cluster {
+
+		/**
+		 * The first column.
+		 */
+		final int min_x;
+
+		/**
+		 * The first row.
+		 */
+		final int min_y;
+
+		/**
+		 * The column after the last one.
+		 */
+		final int max_x;
+
+		/**
+		 * The row after the last one.
+		 */
+		final int max_y;
+
+		/**
+		 * The numbers of the entrance cells.
+		 */
+		int[] cells;
+
+		/**
+		 * For each entrance, the cells next to it in other clusters it
+		 * leads to, each followed by the cost of the step.
+		 */
+		int[][] links;
+
+		/**
+		 * The cost of the cheapest path inside the cluster from each
+		 * entrance to each other, -1 where there is none, entrance
+		 * after entrance.
+		 */
+		int[] costs;
+
+		/**
+		 * Creates a new cluster with no entrances.
+		 *
+		 * Runtime: O(1)
+		 *
+		 * @param the_min_x The first column.
+		 * @param the_min_y The first row.
+		 * @param the_max_x The column after the last one.
+		 * @param the_max_y The row after the last one.
+		 */
+		Cluster(final int the_min_x, final int the_min_y, final int the_max_x,
+				final int the_max_y) {
+			min_x = the_min_x;
+			min_y = the_min_y;
+			max_x = the_max_x;
+			max_y = the_max_y;
+			cells = new int[0];
+			links = new int[0][];
+			costs = new int[0];
+		}
+	}
+}
@@ -0,0 +1,218 @@
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of cell indexes, each with an int key. The heap
+ * remembers where every cell sits in it, so telling whether a cell is
+ * in the heap and lowering the key of a cell need no search. Only that
+ * table has one entry per cell; the heap itself grows as cells are
+ * added, since a search rarely has most of the map open at once.
+ *
+ */
+public class IndexedHeap {
+
+	/**
+	 * Number of cells the heap holds before it first grows.
+	 */
+	private static final int INITIAL_SIZE = 1024;
+
+	/**
+	 * The cells, in heap order.
+	 */
+	private int[] cells;
+
+	/**
+	 * The key of the cell at the same position in cells.
+	 */
+	private int[] keys;
+
+	/**
+	 * The position of each cell in cells, or -1 when it is not in the heap.
+	 */
+	private final int[] positions;
+
+	/**
+	 * Number of cells in the heap.
+	 */
+	private int size;
+
+	/**
+	 * Creates a new empty heap for the cells 0 to capacity - 1.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the capacity)
+	 *
+	 * @param the_capacity The number of cells.
+	 */
+	public IndexedHeap(final int the_capacity) {
+		cells = new int[Math.min(the_capacity, INITIAL_SIZE)];
+		keys = new int[cells.length];
+		positions = new int[the_capacity];
+		Arrays.fill(positions, -1);
+	}
+
+	/**
+	 * Runtime: O(1)
+	 *
+	 * @return The number of cells the heap can hold.
+	 */
+	public int capacity() {
+		return positions.length;
+	}
+
+	/**
+	 * Runtime: O(1)
+	 *
+	 * @return The number of cells in the heap.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Runtime: O(1)
+	 *
+	 * @return Whether the heap is empty.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Runtime: O(1)
+	 *
+	 * @param cell The cell.
+	 * @return Whether the cell is in the heap.
+	 */
+	public boolean contains(final int cell) {
+		return positions[cell] >= 0;
+	}
+
+	/**
+	 * Adds a cell that is not in the heap.
+	 *
+	 * Runtime: O(log n)
+	 * (amortized over growing, where n is the number of cells in the heap)
+	 *
+	 * @param cell The cell.
+	 * @param key The key of the cell.
+	 */
+	public void add(final int cell, final int key) {
+		if (size == cells.length) {
+			int length = (int) Math.min((long) size * 2, positions.length);
+			cells = Arrays.copyOf(cells, length);
+			keys = Arrays.copyOf(keys, length);
+		}
+		cells[size] = cell;
+		keys[size] = key;
+		positions[cell] = size;
+		up(size++);
+	}
+
+	/**
+	 * Lowers the key of a cell in the heap.
+	 *
+	 * Runtime: O(log n)
+	 * (where n is the number of cells in the heap)
+	 *
+	 * @param cell The cell.
+	 * @param key The new key, no greater than the old one.
+	 */
+	public void decrease(final int cell, final int key) {
+		int position = positions[cell];
+		keys[position] = key;
+		up(position);
+	}
+
+	/**
+	 * Removes the cell with the smallest key.
+	 *
+	 * Runtime: O(log n)
+	 * (where n is the number of cells in the heap)
+	 *
+	 * @return The cell.
+	 */
+	public int remove() {
+		int cell = cells[0];
+		positions[cell] = -1;
+		if (--size > 0) {
+			cells[0] = cells[size];
+			keys[0] = keys[size];
+			positions[cells[0]] = 0;
+			down(0);
+		}
+		return cell;
+	}
+
+	/**
+	 * Removes every cell.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the number of cells in the heap)
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			positions[cells[i]] = -1;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Moves the cell at a position up until its parent's key is no greater.
+	 *
+	 * Runtime: O(log n)
+	 * (where n is the number of cells in the heap)
+	 *
+	 * @param the_position The position.
+	 */
+	private void up(final int the_position) {
+		int position = the_position;
+		int cell = cells[position];
+		int key = keys[position];
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (keys[parent] <= key) {
+				break;
+			}
+			cells[position] = cells[parent];
+			keys[position] = keys[parent];
+			positions[cells[position]] = position;
+			position = parent;
+		}
+		cells[position] = cell;
+		keys[position] = key;
+		positions[cell] = position;
+	}
+
+	/**
+	 * Moves the cell at a position down until no child's key is smaller.
+	 *
+	 * Runtime: O(log n)
+	 * (where n is the number of cells in the heap)
+	 *
+	 * @param the_position The position.
+	 */
+	private void down(final int the_position) {
+		int position = the_position;
+		int cell = cells[position];
+		int key = keys[position];
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && keys[child + 1] < keys[child]) {
+				child++;
+			}
+			if (keys[child] >= key) {
+				break;
+			}
+			cells[position] = cells[child];
+			keys[position] = keys[child];
+			positions[cells[position]] = position;
+			position = child;
+		}
+		cells[position] = cell;
+		keys[position] = key;
+		positions[cell] = position;
+	}
+}
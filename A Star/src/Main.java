@@ -1,14 +1,8 @@
-import java.awt.Point;
-import java.util.Stack;
-
 /**
  * 
  * This class implements the A* algorithm for path-finding. 
- * It uses a two dimensional array of integers to represent a graph to be traversed.
- * 0 = untouched
- * 1 = on the open list
- * 2 = on the closed list
- * Parent nodes and f-costs are also stored in two dimensional arrays
+ * It uses a Grid of passable and blocked cells to represent a graph to be traversed.
+ * The g-costs and parents of the cells searched are stored in arrays numbered like the cells.
  * @author Jared Helm
  */
 public class Main {
@@ -17,29 +11,24 @@ public class Main {
 		long start = System.currentTimeMillis();
 		int width = 10;
 		int height = 10;
-		AStarNode[][] map = new AStarNode[width][height];
-		for (int i = 0; i < width; i++) {
-			for (int j = 0; j < height; j++) {
-				map[i][j] = new AStarNode(new Point(i,j));
-			}
-		}
-		map[4][2].passable = false;
-		map[4][3].passable = false;
-		map[4][4].passable = false;
-		map[4][5].passable = false;
-		map[4][6].passable = false;
+		Grid map = new Grid(width, height);
+		map.setPassable(4, 2, false);
+		map.setPassable(4, 3, false);
+		map.setPassable(4, 4, false);
+		map.setPassable(4, 5, false);
+		map.setPassable(4, 6, false);
 		
-		map[0][6].passable = false;
-		map[1][6].passable = false;
-		map[2][6].passable = false;
-		map[3][6].passable = false;
+		map.setPassable(0, 6, false);
+		map.setPassable(1, 6, false);
+		map.setPassable(2, 6, false);
+		map.setPassable(3, 6, false);
 		
-		map[1][2].passable = false;
-		map[2][2].passable = false;
-		map[3][2].passable = false;
-		Stack<Point> path = AStarPathFinder.AStar(map, new Point(1, 4), new Point(8, 5));
-		while (!path.isEmpty()) {
-			System.out.println(path.pop());
+		map.setPassable(1, 2, false);
+		map.setPassable(2, 2, false);
+		map.setPassable(3, 2, false);
+		int[] path = AStarPathFinder.AStar(map, map.index(1, 4), map.index(8, 5));
+		for (int cell : path) {
+			System.out.println("(" + map.x(cell) + ", " + map.y(cell) + ")");
 		}
 		
 		long end = System.currentTimeMillis();
@@ -0,0 +1,320 @@
+import java.util.Random;
+
+/**
+ * Compares AStar with JumpPointSearch on random maps with a few and
+ * with many blocked cells, and on a maze. For each map it finds paths
+ * between the same random pairs of cells with both, checks that the
+ * paths cost the same, and prints the average number of cells each
+ * took off the open list and the average time per path. Then does the
+ * same with a HierarchicalPathFinder, and prints how long it took to
+ * set up and how much more its paths cost. Also checks that all three
+ * find no path from or to a blocked cell.
+ *
+ * Usage: PathFinderBenchmark [size] [paths] [rounds]
+ *
+ */
+public class PathFinderBenchmark {
+
+	/**
+	 * Percentages of blocked cells of the random maps.
+	 */
+	private static final int[] DENSITIES = {0, 1, 10, 30};
+
+	/**
+	 * Search with AStar.
+	 */
+	private static final int A_STAR = 1;
+
+	/**
+	 * Search with JumpPointSearch.
+	 */
+	private static final int JUMP_POINT = 2;
+
+	/**
+	 * Search with a HierarchicalPathFinder.
+	 */
+	private static final int HIERARCHICAL = 3;
+
+	public static void main(String[] args) {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int paths = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+		Random random = new Random(1);
+
+		Grid[] grids = new Grid[DENSITIES.length + 1];
+		String[] names = new String[grids.length];
+		for (int i = 0; i < DENSITIES.length; i++) {
+			grids[i] = random(size, DENSITIES[i], random);
+			names[i] = "random " + DENSITIES[i] + "%";
+		}
+		grids[DENSITIES.length] = maze(size, random);
+		names[DENSITIES.length] = "maze";
+
+		System.out.printf("%d x %d, %d paths%n", size, size, paths);
+		System.out.printf("%-12s %12s %12s %10s %10s %10s %10s %10s%n", "map", "AStar cells",
+				"JPS cells", "AStar us", "JPS us", "HPA us", "HPA cost", "HPA setup");
+		for (int i = 0; i < grids.length; i++) {
+			Grid grid = grids[i];
+			int[] starts = new int[paths];
+			int[] ends = new int[paths];
+			for (int j = 0; j < paths; j++) {
+				starts[j] = passableCell(grid, random);
+				ends[j] = passableCell(grid, random);
+			}
+
+			SearchContext context = new SearchContext(grid.size());
+			long[] a_star = measure(grid, null, starts, ends, A_STAR, context, rounds);
+			long[] jump_point = measure(grid, null, starts, ends, JUMP_POINT, context, rounds);
+			long setup = System.nanoTime();
+			HierarchicalPathFinder finder = new HierarchicalPathFinder(grid);
+			setup = System.nanoTime() - setup;
+			long[] hierarchical = measure(grid, finder, starts, ends, HIERARCHICAL, context, rounds);
+			checkBlocked(grid, finder, names[i], random, context);
+			long a_star_cost = 0;
+			long hierarchical_cost = 0;
+			for (int j = 0; j < paths; j++) {
+				if (a_star[2 + j] != jump_point[2 + j]) {
+					throw new IllegalStateException(names[i] + ": path " + j + " costs " + a_star[2 + j]
+							+ " with AStar and " + jump_point[2 + j] + " with JumpPointSearch");
+				}
+				if (a_star[2 + j] < 0 != hierarchical[2 + j] < 0) {
+					throw new IllegalStateException(names[i] + ": path " + j + " costs " + a_star[2 + j]
+							+ " with AStar and " + hierarchical[2 + j] + " with HierarchicalPathFinder");
+				}
+				if (a_star[2 + j] > 0) {
+					a_star_cost += a_star[2 + j];
+					hierarchical_cost += hierarchical[2 + j];
+				}
+			}
+			System.out.printf("%-12s %12d %12d %10.1f %10.1f %10.1f %9.1f%% %8d ms%n", names[i],
+					a_star[1] / paths, jump_point[1] / paths, a_star[0] / 1000.0 / paths,
+					jump_point[0] / 1000.0 / paths, hierarchical[0] / 1000.0 / paths,
+					100.0 * hierarchical_cost / a_star_cost - 100, setup / 1000000);
+		}
+	}
+
+	/**
+	 * Finds every path with one of the searches, several times over.
+	 *
+	 * Runtime: O(r * p * n log n)
+	 * (where r is the number of rounds, p the number of paths and n
+	 * the number of cells on the grid)
+	 *
+	 * @param grid The grid.
+	 * @param finder The finder, for HIERARCHICAL.
+	 * @param starts The first cell of each path.
+	 * @param ends The last cell of each path.
+	 * @param search A_STAR, JUMP_POINT or HIERARCHICAL.
+	 * @param context The context to search with.
+	 * @param rounds The number of times to find every path.
+	 * @return The best time in nanoseconds, the number of cells taken
+	 * off the open list (by the last search only, for HIERARCHICAL),
+	 * and then the cost of each path, -1 where there is none.
+	 */
+	private static long[] measure(final Grid grid, final HierarchicalPathFinder finder,
+			final int[] starts, final int[] ends, final int search, final SearchContext context,
+			final int rounds) {
+		long[] result = new long[2 + starts.length];
+		result[0] = Long.MAX_VALUE;
+		for (int round = 0; round < rounds; round++) {
+			long expanded = 0;
+			long time = System.nanoTime();
+			for (int i = 0; i < starts.length; i++) {
+				int[] path;
+				if (search == A_STAR) {
+					path = AStarPathFinder.AStar(grid, starts[i], ends[i], context);
+				} else if (search == JUMP_POINT) {
+					path = AStarPathFinder.JumpPointSearch(grid, starts[i], ends[i], context);
+				} else {
+					path = finder.findPath(starts[i], ends[i], context);
+				}
+				expanded += context.expanded();
+				result[2 + i] = cost(grid, path);
+			}
+			result[0] = Math.min(result[0], System.nanoTime() - time);
+			result[1] = expanded;
+		}
+		return result;
+	}
+
+	/**
+	 * Checks that no search finds a path from a blocked cell, to one,
+	 * or between two, if the grid has blocked cells.
+	 *
+	 * Runtime: O(n log n)
+	 * (where n is the number of cells on the grid)
+	 *
+	 * @param grid The grid.
+	 * @param finder The finder for the grid.
+	 * @param name The name of the map.
+	 * @param random The source of random numbers.
+	 * @param context The context to search with.
+	 */
+	private static void checkBlocked(final Grid grid, final HierarchicalPathFinder finder,
+			final String name, final Random random, final SearchContext context) {
+		int blocked = blockedCell(grid, random);
+		if (blocked < 0) {
+			return;
+		}
+		int passable = passableCell(grid, random);
+		int[][] pairs = {{passable, blocked}, {blocked, passable}, {blocked, blocked}};
+		for (int[] pair : pairs) {
+			if (AStarPathFinder.AStar(grid, pair[0], pair[1], context) != null
+					|| AStarPathFinder.JumpPointSearch(grid, pair[0], pair[1], context) != null
+					|| finder.findPath(pair[0], pair[1], context) != null) {
+				throw new IllegalStateException(name + ": found a path from " + pair[0] + " to "
+						+ pair[1] + " with a blocked end");
+			}
+		}
+	}
+
+	/**
+	 * Adds up the cost of a path, checking that every step is to a
+	 * passable neighbor.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the path)
+	 *
+	 * @param grid The grid.
+	 * @param path The numbers of the cells on the path, or null.
+	 * @return The cost of the path, or -1 if it is null.
+	 */
+	private static long cost(final Grid grid, final int[] path) {
+		if (path == null) {
+			return -1;
+		}
+		long cost = 0;
+		for (int i = 1; i < path.length; i++) {
+			int dx = Math.abs(grid.x(path[i]) - grid.x(path[i - 1]));
+			int dy = Math.abs(grid.y(path[i]) - grid.y(path[i - 1]));
+			if (dx > 1 || dy > 1 || dx + dy == 0 || !grid.isPassable(path[i])) {
+				throw new IllegalStateException("Bad step from " + path[i - 1] + " to " + path[i]);
+			}
+			cost += dx + dy == 2 ? 14 : 10;
+		}
+		return cost;
+	}
+
+	/**
+	 * Makes a square grid with cells blocked at random.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the number of cells)
+	 *
+	 * @param size The number of rows and columns.
+	 * @param density The percentage of cells to block.
+	 * @param random The source of random numbers.
+	 * @return The grid.
+	 */
+	private static Grid random(final int size, final int density, final Random random) {
+		Grid grid = new Grid(size, size);
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				if (random.nextInt(100) < density) {
+					grid.setPassable(x, y, false);
+				}
+			}
+		}
+		return grid;
+	}
+
+	/**
+	 * Makes a square maze with corridors one cell wide and exactly one
+	 * way between any two of its cells, by walking from the corner and
+	 * knocking down walls into cells not yet visited, backing up when
+	 * there are none.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the number of cells)
+	 *
+	 * @param size The number of rows and columns.
+	 * @param random The source of random numbers.
+	 * @return The grid.
+	 */
+	private static Grid maze(final int size, final Random random) {
+		Grid grid = new Grid(size, size);
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				grid.setPassable(x, y, false);
+			}
+		}
+		// rooms sit at even coordinates, walls between them at odd ones
+		int rooms = (size + 1) / 2;
+		boolean[] visited = new boolean[rooms * rooms];
+		int[] stack = new int[rooms * rooms];
+		int[] choices = new int[4];
+		int top = 0;
+		stack[top++] = 0;
+		visited[0] = true;
+		grid.setPassable(0, 0, true);
+		while (top > 0) {
+			int room = stack[top - 1];
+			int x = room % rooms;
+			int y = room / rooms;
+			int count = 0;
+			if (x > 0 && !visited[room - 1]) {
+				choices[count++] = room - 1;
+			}
+			if (x + 1 < rooms && !visited[room + 1]) {
+				choices[count++] = room + 1;
+			}
+			if (y > 0 && !visited[room - rooms]) {
+				choices[count++] = room - rooms;
+			}
+			if (y + 1 < rooms && !visited[room + rooms]) {
+				choices[count++] = room + rooms;
+			}
+			if (count == 0) {
+				top--;
+				continue;
+			}
+			int next = choices[random.nextInt(count)];
+			int next_x = next % rooms;
+			int next_y = next / rooms;
+			grid.setPassable(x + next_x, y + next_y, true);
+			grid.setPassable(2 * next_x, 2 * next_y, true);
+			visited[next] = true;
+			stack[top++] = next;
+		}
+		return grid;
+	}
+
+	/**
+	 * Picks a blocked cell, the first one from a random cell on.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the number of cells)
+	 *
+	 * @param grid The grid.
+	 * @param random The source of random numbers.
+	 * @return The number of the cell, or -1 if no cell is blocked.
+	 */
+	private static int blockedCell(final Grid grid, final Random random) {
+		int first = random.nextInt(grid.size());
+		for (int i = 0; i < grid.size(); i++) {
+			int cell = (first + i) % grid.size();
+			if (!grid.isPassable(cell)) {
+				return cell;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Picks a passable cell at random.
+	 *
+	 * Runtime: O(1)
+	 * (expected, when a fair share of the cells are passable)
+	 *
+	 * @param grid The grid.
+	 * @param random The source of random numbers.
+	 * @return The number of the cell.
+	 */
+	private static int passableCell(final Grid grid, final Random random) {
+		int cell;
+		do {
+			cell = random.nextInt(grid.size());
+		} while (!grid.isPassable(cell));
+		return cell;
+	}
+}
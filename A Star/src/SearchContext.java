@@ -0,0 +1,200 @@
+import java.util.Arrays;
+
+/**
+ * The scratch state of one search: the g and parent of every cell,
+ * which cells have been seen or closed, and the open list. A context
+ * is reused from one search to the next. Instead of clearing its
+ * arrays, it starts a new generation, and a cell counts as seen only
+ * when it was stamped in the current one, so starting a search costs
+ * the same on any size of map.
+ *
+ * A context may be used by one search at a time. The AStarPathFinder
+ * class keeps one per thread, so searches on different threads never
+ * share one, and the Grid they read is never written by a search.
+ *
+ */
+public class SearchContext {
+
+	/**
+	 * The cost of the best path found so far to each cell seen.
+	 */
+	int[] g;
+
+	/**
+	 * The cell each cell seen was reached from, -1 for the start.
+	 */
+	int[] parent;
+
+	/**
+	 * The open list.
+	 */
+	IndexedHeap open_list;
+
+	/**
+	 * The generation each cell was last seen in, plus one once it was closed.
+	 */
+	private int[] stamps;
+
+	/**
+	 * The generation of the current search. Always even, so that
+	 * generation + 1 can mark closed cells.
+	 */
+	private int generation;
+
+	/**
+	 * Number of cells the current search has closed.
+	 */
+	private int expanded;
+
+	/**
+	 * Creates a new context, which grows to fit the first map it searches.
+	 *
+	 * Runtime: O(1)
+	 */
+	public SearchContext() {
+		this(0);
+	}
+
+	/**
+	 * Creates a new context for maps of up to the given number of cells.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the given number of cells)
+	 *
+	 * @param the_cells The number of cells.
+	 */
+	public SearchContext(final int the_cells) {
+		allocate(the_cells);
+	}
+
+	/**
+	 * Runtime: O(1)
+	 *
+	 * @return The number of cells the last search closed.
+	 */
+	public int expanded() {
+		return expanded;
+	}
+
+	/**
+	 * Forgets the last search and gets ready for one on a map with the
+	 * given number of cells.
+	 *
+	 * Runtime: O(k)
+	 * (where k is the number of cells left on the open list by the last
+	 * search; O(n) for the number of cells n when the context has to
+	 * grow, or once every billion searches when the generation wraps)
+	 *
+	 * @param cells The number of cells on the map.
+	 */
+	void start(final int cells) {
+		if (stamps.length < cells) {
+			allocate(cells);
+		}
+		open_list.clear();
+		if (generation >= Integer.MAX_VALUE - 2) {
+			Arrays.fill(stamps, 0);
+			generation = 0;
+		}
+		generation += 2;
+		expanded = 0;
+	}
+
+	/**
+	 * Runtime: O(1)
+	 *
+	 * @param cell The number of a cell.
+	 * @return Whether the current search has seen the cell.
+	 */
+	boolean isSeen(final int cell) {
+		return stamps[cell] >= generation;
+	}
+
+	/**
+	 * Runtime: O(1)
+	 *
+	 * @param cell The number of a cell.
+	 * @return Whether the current search has closed the cell.
+	 */
+	boolean isClosed(final int cell) {
+		return stamps[cell] == generation + 1;
+	}
+
+	/**
+	 * Runtime: O(1)
+	 *
+	 * @param cell The number of a cell.
+	 * @return The cost of the cheapest path the current search has
+	 * closed the cell with, or -1 if it has not closed the cell.
+	 */
+	int cost(final int cell) {
+		return isClosed(cell) ? g[cell] : -1;
+	}
+
+	/**
+	 * Marks a cell as seen and puts it on the open list.
+	 *
+	 * Runtime: O(log n)
+	 * (where n is the number of cells on the open list)
+	 *
+	 * @param cell The number of the cell.
+	 * @param the_g The cost of the path to the cell.
+	 * @param the_parent The cell it was reached from, or -1.
+	 * @param f The key of the cell on the open list.
+	 */
+	void open(final int cell, final int the_g, final int the_parent, final int f) {
+		stamps[cell] = generation;
+		g[cell] = the_g;
+		parent[cell] = the_parent;
+		open_list.add(cell, f);
+	}
+
+	/**
+	 * Records a shorter path to a cell on the open list and moves it up.
+	 *
+	 * Runtime: O(log n)
+	 * (where n is the number of cells on the open list)
+	 *
+	 * @param cell The number of the cell.
+	 * @param the_g The cost of the path to the cell, less than before.
+	 * @param the_parent The cell it was reached from.
+	 * @param f The new key of the cell on the open list.
+	 */
+	void improve(final int cell, final int the_g, final int the_parent, final int f) {
+		g[cell] = the_g;
+		parent[cell] = the_parent;
+		open_list.decrease(cell, f);
+	}
+
+	/**
+	 * Takes the cell with the smallest key off the open list and marks
+	 * it as closed.
+	 *
+	 * Runtime: O(log n)
+	 * (where n is the number of cells on the open list)
+	 *
+	 * @return The number of the cell.
+	 */
+	int close() {
+		int cell = open_list.remove();
+		stamps[cell] = generation + 1;
+		expanded++;
+		return cell;
+	}
+
+	/**
+	 * Replaces the arrays with empty ones for the given number of cells.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the given number of cells)
+	 *
+	 * @param cells The number of cells.
+	 */
+	private void allocate(final int cells) {
+		g = new int[cells];
+		parent = new int[cells];
+		stamps = new int[cells];
+		open_list = new IndexedHeap(cells);
+		generation = 0;
+	}
+}
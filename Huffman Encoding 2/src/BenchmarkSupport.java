@@ -0,0 +1,90 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Reads the words of a text and runs work on several threads at once,
+ * for the benchmarks that share a table or cache between threads.
+ *
+ */
+public class BenchmarkSupport {
+
+	/**
+	 * Work done by one thread on its share of the words.
+	 */
+	public interface Share {
+
+		/**
+		 * Does the work for part of the words.
+		 *
+		 * @param from Index of the first word of the share.
+		 * @param to Index after the last word of the share.
+		 */
+		void run(int from, int to);
+	}
+
+	/**
+	 * Splits a file into words and separators.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the file)
+	 *
+	 * @param file The file to read.
+	 * @return The words and separators in order.
+	 * @throws IOException If the file cannot be read.
+	 */
+	public static String[] words(final File file) throws IOException {
+		ArrayList<String> words = new ArrayList<String>();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			Tokenizer tokenizer = new Tokenizer(channel);
+			String word;
+			while ((word = tokenizer.next()) != null) {
+				words.add(word);
+			}
+		}
+		return words.toArray(new String[words.size()]);
+	}
+
+	/**
+	 * Splits a number of words evenly between the given number of
+	 * threads and runs every share at the same time. The threads are
+	 * started first and then released together, so starting them is
+	 * not timed.
+	 *
+	 * Runtime: O(n/p)
+	 * (where n is the number of words and p the number of threads)
+	 *
+	 * @param words The number of words.
+	 * @param threads The number of threads.
+	 * @param share The work each thread does on its share.
+	 * @return The running time in nanoseconds.
+	 * @throws InterruptedException If interrupted while waiting for the threads.
+	 */
+	public static long runShared(final int words, final int threads, final Share share)
+			throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++) {
+			final int from = (int) ((long) words * i / threads);
+			final int to = (int) ((long) words * (i + 1) / threads);
+			new Thread() {
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					share.run(from, to);
+					done.countDown();
+				}
+			}.start();
+		}
+		long time = System.nanoTime();
+		start.countDown();
+		done.await();
+		return System.nanoTime() - time;
+	}
+}
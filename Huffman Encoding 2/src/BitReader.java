@@ -0,0 +1,161 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads bits written by the BitWriter class. Bits are kept left
+ * aligned in a 64 bit window so several of them can be peeked at
+ * once. Reading past the end of the input returns zero bits.
+ *
+ */
+public class BitReader {
+
+	/**
+	 * Size of the input buffer in bytes.
+	 */
+	public static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The channel to read from.
+	 */
+	private final ReadableByteChannel in;
+
+	/**
+	 * Bytes read from the channel but not yet moved to the window.
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * The next bits of the input, left aligned.
+	 */
+	private long window;
+
+	/**
+	 * Number of valid bits in the window.
+	 */
+	private int available;
+
+	/**
+	 * Whether the end of the channel has been reached.
+	 */
+	private boolean eof;
+
+	/**
+	 * Creates a new bit reader for the given channel.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param the_in The channel to read from.
+	 */
+	public BitReader(final ReadableByteChannel the_in) {
+		in = the_in;
+		buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		buffer.flip();
+		window = 0;
+		available = 0;
+		eof = false;
+	}
+
+	/**
+	 * Returns the next bits without consuming them.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param n The number of bits, from 1 to 32.
+	 * @return The next n bits, right aligned.
+	 * @throws IOException If the channel cannot be read.
+	 */
+	public int peek(final int n) throws IOException {
+		if (available < n) {
+			refill();
+		}
+		return (int) (window >>> (64 - n));
+	}
+
+	/**
+	 * Consumes bits that have been peeked at.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param n The number of bits to consume, at most the number peeked at.
+	 */
+	public void skip(final int n) {
+		window <<= n;
+		available -= n;
+	}
+
+	/**
+	 * Reads several bits.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param n The number of bits, from 1 to 32.
+	 * @return The next n bits, right aligned.
+	 * @throws IOException If the channel cannot be read.
+	 */
+	public int read(final int n) throws IOException {
+		int bits = peek(n);
+		skip(n);
+		return bits;
+	}
+
+	/**
+	 * Reads a single bit.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @return The next bit.
+	 * @throws IOException If the channel cannot be read.
+	 */
+	public int readBit() throws IOException {
+		int bit = peek(1);
+		skip(1);
+		return bit;
+	}
+
+	/**
+	 * Moves bytes from the buffer into the window until it holds
+	 * at least 57 bits or the input runs out.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @throws IOException If the channel cannot be read.
+	 */
+	private void refill() throws IOException {
+		while (available <= 56) {
+			if (!buffer.hasRemaining() && !fill()) {
+				// past the end, the window is already padded with zeros
+				available = 64;
+				return;
+			}
+			window |= (long) (buffer.get() & 0xFF) << (56 - available);
+			available += 8;
+		}
+	}
+
+	/**
+	 * Reads the next chunk of the channel into the buffer.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the buffer)
+	 *
+	 * @return True if more bytes were read, false at the end of the input.
+	 * @throws IOException If the channel cannot be read.
+	 */
+	private boolean fill() throws IOException {
+		if (eof) {
+			return false;
+		}
+		buffer.clear();
+		int read;
+		do {
+			read = in.read(buffer);
+		} while (read == 0);
+		buffer.flip();
+		if (read < 0) {
+			eof = true;
+			return false;
+		}
+		return true;
+	}
+}
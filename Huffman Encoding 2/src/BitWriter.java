@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Packs variable length codes into bytes. Bits are collected in a
+ * 64 bit accumulator and whole words are flushed to a byte buffer,
+ * which is written to the channel when it fills up. The first bit
+ * written is the most significant bit of the first byte.
+ *
+ */
+public class BitWriter {
+
+	/**
+	 * Size of the output buffer in bytes.
+	 */
+	public static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The channel to write to.
+	 */
+	private final WritableByteChannel out;
+
+	/**
+	 * Whole words waiting to be written to the channel.
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * Bits not yet moved to the buffer, right aligned.
+	 */
+	private long accumulator;
+
+	/**
+	 * Number of bits in the accumulator.
+	 */
+	private int used;
+
+	/**
+	 * Total number of bits written.
+	 */
+	private long bits_written;
+
+	/**
+	 * Creates a new bit writer for the given channel.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param the_out The channel to write to.
+	 */
+	public BitWriter(final WritableByteChannel the_out) {
+		out = the_out;
+		buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		accumulator = 0;
+		used = 0;
+		bits_written = 0;
+	}
+
+	/**
+	 * Writes the low bits of the given value, most significant first.
+	 * Bits above the given length must be zero.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param bits The bits to write, right aligned.
+	 * @param length The number of bits to write, from 0 to 64.
+	 * @throws IOException If the channel cannot be written.
+	 */
+	public void write(final long bits, final int length) throws IOException {
+		int free = 64 - used;
+		if (length < free) {
+			accumulator = (accumulator << length) | bits;
+			used += length;
+		} else {
+			int rest = length - free;
+			long high = used == 0 ? 0 : accumulator << free;
+			putLong(high | (bits >>> rest));
+			// bits above the rest are shifted out before they are written
+			accumulator = bits;
+			used = rest;
+		}
+		bits_written += length;
+	}
+
+	/**
+	 * Writes the given code.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param code The code to write.
+	 * @throws IOException If the channel cannot be written.
+	 */
+	public void write(final Code code) throws IOException {
+		write(code.bits, code.length);
+	}
+
+	/**
+	 * Returns the number of bits written so far, not counting padding.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @return The number of bits written.
+	 */
+	public long bitsWritten() {
+		return bits_written;
+	}
+
+	/**
+	 * Writes the remaining bits, padding the last byte with zeros,
+	 * and flushes the buffer to the channel. Nothing may be written
+	 * after this.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the buffer)
+	 *
+	 * @throws IOException If the channel cannot be written.
+	 */
+	public void finish() throws IOException {
+		if (used > 0) {
+			long aligned = accumulator << (64 - used);
+			for (int i = 0; i < used; i += 8) {
+				if (!buffer.hasRemaining()) {
+					drain();
+				}
+				buffer.put((byte) (aligned >>> (56 - i)));
+			}
+			used = 0;
+		}
+		drain();
+	}
+
+	/**
+	 * Moves a full word from the accumulator to the buffer.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param word The word to write.
+	 * @throws IOException If the channel cannot be written.
+	 */
+	private void putLong(final long word) throws IOException {
+		if (buffer.remaining() < 8) {
+			drain();
+		}
+		buffer.putLong(word);
+	}
+
+	/**
+	 * Writes the contents of the buffer to the channel.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the buffer)
+	 *
+	 * @throws IOException If the channel cannot be written.
+	 */
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		buffer.clear();
+	}
+}
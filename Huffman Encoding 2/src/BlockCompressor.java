@@ -0,0 +1,531 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compresses a file as independently decodable blocks. The input is
+ * cut into blocks of about BLOCK_SIZE bytes at separators, every block
+ * is encoded with the same coding tree on a pool of worker threads and
+ * the blocks are written one after the other, each starting on a byte
+ * boundary. A file in the BLOCKS format looks like:
+ *
+ * header (see CompressedFile), the blocks,
+ * the block index: for each block its file offset (8 bytes),
+ * number of code bits (8 bytes) and decompressed size (4 bytes),
+ * then the index offset (8 bytes) and number of blocks (4 bytes).
+ *
+ * The index is at the end because block sizes are only known once
+ * they are encoded. Its entries have a fixed size, so a reader can
+ * seek straight to any block and decode blocks in parallel.
+ *
+ */
+public class BlockCompressor {
+
+	/**
+	 * Number of input bytes per block, before moving to a separator.
+	 */
+	public static final int BLOCK_SIZE = 1 << 20;
+
+	/**
+	 * Size of one block index entry in bytes.
+	 */
+	public static final int INDEX_ENTRY_SIZE = 20;
+
+	/**
+	 * Size of the index offset and block count at the end of the file.
+	 */
+	public static final int TRAILER_SIZE = 12;
+
+	/**
+	 * An encoded block.
+	 */
+	private static class Block {
+
+		/**
+		 * The code bits, padded to a whole byte.
+		 */
+		final byte[] data;
+
+		/**
+		 * Number of code bits.
+		 */
+		final long bits;
+
+		/**
+		 * Number of input bytes in the block.
+		 */
+		final int raw_length;
+
+		/**
+		 * Creates a new encoded block.
+		 *
+		 * Runtime: O(1)
+		 *
+		 * @param the_data The code bits.
+		 * @param the_bits Number of code bits.
+		 * @param the_raw_length Number of input bytes in the block.
+		 */
+		Block(final byte[] the_data, final long the_bits, final int the_raw_length) {
+			data = the_data;
+			bits = the_bits;
+			raw_length = the_raw_length;
+		}
+	}
+
+	/**
+	 * The block index of a compressed file.
+	 */
+	public static class BlockIndex {
+
+		/**
+		 * File offset of each block.
+		 */
+		public final long[] offsets;
+
+		/**
+		 * Number of code bits in each block.
+		 */
+		public final long[] bits;
+
+		/**
+		 * Decompressed size of each block.
+		 */
+		public final int[] raw_lengths;
+
+		/**
+		 * Offset of each block in the decompressed file.
+		 */
+		public final long[] raw_offsets;
+
+		/**
+		 * Creates an empty index for the given number of blocks.
+		 *
+		 * Runtime: O(n)
+		 * (where n is the number of blocks)
+		 *
+		 * @param count The number of blocks.
+		 */
+		BlockIndex(final int count) {
+			offsets = new long[count];
+			bits = new long[count];
+			raw_lengths = new int[count];
+			raw_offsets = new long[count];
+		}
+	}
+
+	/**
+	 * Encodes one block with the codes of the coding tree.
+	 */
+	private static class EncodeTask implements Callable<Block> {
+
+		/**
+		 * The input bytes of the block.
+		 */
+		private final byte[] raw;
+
+		/**
+		 * Number of input bytes in the block.
+		 */
+		private final int length;
+
+		/**
+		 * The coding tree shared by all blocks.
+		 */
+		private final CodingTree ct;
+
+		/**
+		 * Creates a new task encoding the given bytes.
+		 *
+		 * Runtime: O(1)
+		 *
+		 * @param the_raw The input bytes of the block.
+		 * @param the_length Number of input bytes in the block.
+		 * @param the_ct The coding tree shared by all blocks.
+		 */
+		EncodeTask(final byte[] the_raw, final int the_length, final CodingTree the_ct) {
+			raw = the_raw;
+			length = the_length;
+			ct = the_ct;
+		}
+
+		/**
+		 * Encodes the block.
+		 *
+		 * Runtime: O(n)
+		 * (where n is the size of the block)
+		 *
+		 * @return The encoded block.
+		 * @throws IOException If the block cannot be encoded.
+		 */
+		public Block call() throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 2);
+			BitWriter bitWriter = new BitWriter(Channels.newChannel(bytes));
+			Tokenizer tokenizer = new Tokenizer(raw, 0, length);
+			long[] code_bits = ct.code_bits;
+			int[] code_lengths = ct.code_lengths;
+			// looked up a batch at a time, so cache misses in the table overlap
+			int[] ids = new int[Tokenizer.BATCH_SIZE];
+			int count;
+			while ((count = tokenizer.nextIds(ct.table, ids)) > 0) {
+				for (int i = 0; i < count; i++) {
+					bitWriter.write(code_bits[ids[i]], code_lengths[ids[i]]);
+				}
+			}
+			bitWriter.finish();
+			return new Block(bytes.toByteArray(), bitWriter.bitsWritten(), length);
+		}
+	}
+
+	/**
+	 * Decodes one block and writes it to its place in the output.
+	 */
+	private static class DecodeTask implements Callable<Void> {
+
+		/**
+		 * The compressed file.
+		 */
+		private final FileChannel input;
+
+		/**
+		 * The decompressed file.
+		 */
+		private final FileChannel output;
+
+		/**
+		 * The decoder shared by all blocks.
+		 */
+		private final HuffmanDecoder decoder;
+
+		/**
+		 * The block index.
+		 */
+		private final BlockIndex index;
+
+		/**
+		 * The block to decode.
+		 */
+		private final int block;
+
+		/**
+		 * Creates a new task decoding the given block.
+		 *
+		 * Runtime: O(1)
+		 *
+		 * @param the_input The compressed file.
+		 * @param the_output The decompressed file.
+		 * @param the_decoder The decoder shared by all blocks.
+		 * @param the_index The block index.
+		 * @param the_block The block to decode.
+		 */
+		DecodeTask(final FileChannel the_input, final FileChannel the_output,
+				final HuffmanDecoder the_decoder, final BlockIndex the_index, final int the_block) {
+			input = the_input;
+			output = the_output;
+			decoder = the_decoder;
+			index = the_index;
+			block = the_block;
+		}
+
+		/**
+		 * Decodes the block.
+		 *
+		 * Runtime: O(n)
+		 * (where n is the size of the block)
+		 *
+		 * @return Nothing.
+		 * @throws IOException If the block cannot be read, decoded or written.
+		 */
+		public Void call() throws IOException {
+			ByteBuffer raw = ByteBuffer.wrap(readBlock(input, decoder, index, block));
+			long position = index.raw_offsets[block];
+			while (raw.hasRemaining()) {
+				position += output.write(raw, position);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Compresses a file in blocks and prints the same statistics as Main.
+	 *
+	 * Runtime: O(n/p)
+	 * (where n is the size of the file and p the number of cores)
+	 *
+	 * @param in The file to compress.
+	 * @param out The file to write the compressed file to.
+	 * @param max_length Longest code length allowed, from 1 to 64.
+	 * @throws IOException If a file cannot be read or written.
+	 */
+	public static void compress(final File in, final File out, final int max_length)
+			throws IOException {
+		long start = System.currentTimeMillis();
+
+		SymbolTable table = new SymbolTable();
+		StreamCompressor.countFrequencies(in, true, table);
+		CodingTree ct = new CodingTree(table, max_length);
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		long compressedCost;
+		try {
+			compressedCost = encode(in, ct, out, pool);
+		} finally {
+			pool.shutdown();
+		}
+		long asciiCost = in.length() * 8;
+
+		long duration = System.currentTimeMillis() - start;
+
+		System.out.println("Uncompressed file size: " + asciiCost / 8 + " bytes");
+		System.out.println("Compressed file size: " + compressedCost / 8 + " bytes");
+		if (asciiCost > 0) {
+			System.out.println("Compression ratio: " + compressedCost * 100 / asciiCost + "%"
+					+ ct.limitCost(asciiCost));
+		}
+		System.out.println("Running Time: " + duration + " milliseconds");
+	}
+
+	/**
+	 * Encodes the file in blocks on the given pool and writes the header,
+	 * the blocks and the block index to the output file. Only a few blocks
+	 * per thread are held in memory at once.
+	 *
+	 * Runtime: O(n/p)
+	 * (where n is the size of the file and p the number of threads)
+	 *
+	 * @param in The file to compress.
+	 * @param ct The coding tree built from the file.
+	 * @param out The file to write the compressed file to.
+	 * @param pool The threads to encode the blocks on.
+	 * @return The size of the compressed file in bits.
+	 * @throws IOException If a file cannot be read or written.
+	 */
+	public static long encode(final File in, final CodingTree ct, final File out,
+			final ExecutorService pool) throws IOException {
+		int in_flight = 2 * Runtime.getRuntime().availableProcessors();
+		ArrayDeque<Future<Block>> pending = new ArrayDeque<Future<Block>>();
+		List<Block> written = new ArrayList<Block>();
+		List<Long> offsets = new ArrayList<Long>();
+		try (FileChannel channel = FileChannel.open(in.toPath(), StandardOpenOption.READ);
+				FileChannel output = FileChannel.open(out.toPath(), StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			BitWriter bitWriter = new BitWriter(output);
+			new CompressedFile(ct, CompressedFile.BLOCKS).write(bitWriter);
+			bitWriter.finish();
+
+			ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+			boolean eof = false;
+			while (!eof) {
+				while (buffer.hasRemaining() && !eof) {
+					eof = channel.read(buffer) < 0;
+				}
+				byte[] array = buffer.array();
+				int cut = buffer.position();
+				if (!eof) {
+					// end the block after the last separator
+					while (cut > 0 && Tokenizer.isWordChar(array[cut - 1])) {
+						cut--;
+					}
+					if (cut == 0) { // a single word fills the block
+						ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+						buffer.flip();
+						bigger.put(buffer);
+						buffer = bigger;
+						continue;
+					}
+				}
+				if (cut > 0) {
+					byte[] raw = new byte[cut];
+					System.arraycopy(array, 0, raw, 0, cut);
+					pending.add(pool.submit(new EncodeTask(raw, cut, ct)));
+				}
+				buffer.flip();
+				buffer.position(cut);
+				buffer.compact();
+				while (pending.size() > in_flight || (eof && !pending.isEmpty())) {
+					Block block = await(pending.remove());
+					offsets.add(output.position());
+					written.add(block);
+					ByteBuffer data = ByteBuffer.wrap(block.data);
+					while (data.hasRemaining()) {
+						output.write(data);
+					}
+				}
+			}
+
+			ByteBuffer index = ByteBuffer.allocate(written.size() * INDEX_ENTRY_SIZE + TRAILER_SIZE);
+			long index_offset = output.position();
+			for (int i = 0; i < written.size(); i++) {
+				index.putLong(offsets.get(i));
+				index.putLong(written.get(i).bits);
+				index.putInt(written.get(i).raw_length);
+			}
+			index.putLong(index_offset);
+			index.putInt(written.size());
+			index.flip();
+			while (index.hasRemaining()) {
+				output.write(index);
+			}
+			return output.position() * 8;
+		}
+	}
+
+	/**
+	 * Waits for a block to be encoded.
+	 *
+	 * Runtime: O(1)
+	 * (not counting the wait)
+	 *
+	 * @param future The pending block.
+	 * @return The encoded block.
+	 * @throws IOException If the block could not be encoded.
+	 */
+	private static Block await(final Future<Block> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while encoding", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Could not encode block", e.getCause());
+		}
+	}
+
+	/**
+	 * Reads the block index at the end of a compressed file.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the number of blocks)
+	 *
+	 * @param input The compressed file.
+	 * @return The block index.
+	 * @throws IOException If the index cannot be read or is malformed.
+	 */
+	public static BlockIndex readIndex(final FileChannel input) throws IOException {
+		if (input.size() < TRAILER_SIZE) {
+			throw new IOException("Missing block index");
+		}
+		ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+		readFully(input, trailer, input.size() - TRAILER_SIZE);
+		long index_offset = trailer.getLong(0);
+		int count = trailer.getInt(8);
+		if (count < 0 || index_offset < 0
+				|| index_offset + (long) count * INDEX_ENTRY_SIZE + TRAILER_SIZE != input.size()) {
+			throw new IOException("Malformed block index");
+		}
+		ByteBuffer entries = ByteBuffer.allocate(count * INDEX_ENTRY_SIZE);
+		readFully(input, entries, index_offset);
+		BlockIndex index = new BlockIndex(count);
+		long raw_offset = 0;
+		for (int i = 0; i < count; i++) {
+			index.offsets[i] = entries.getLong();
+			index.bits[i] = entries.getLong();
+			index.raw_lengths[i] = entries.getInt();
+			index.raw_offsets[i] = raw_offset;
+			raw_offset += index.raw_lengths[i];
+		}
+		return index;
+	}
+
+	/**
+	 * Decodes a single block. Blocks can be decoded in any order
+	 * and from several threads at once.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the block)
+	 *
+	 * @param input The compressed file.
+	 * @param decoder The decoder built from the header of the file.
+	 * @param index The block index of the file.
+	 * @param block The block to decode.
+	 * @return The decompressed bytes of the block.
+	 * @throws IOException If the block cannot be read or is corrupt.
+	 */
+	public static byte[] readBlock(final FileChannel input, final HuffmanDecoder decoder,
+			final BlockIndex index, final int block) throws IOException {
+		ByteBuffer data = ByteBuffer.allocate((int) ((index.bits[block] + 7) / 8));
+		readFully(input, data, index.offsets[block]);
+		BitReader bitReader = new BitReader(Channels.newChannel(new ByteArrayInputStream(data.array())));
+		ByteArrayOutputStream raw = new ByteArrayOutputStream(index.raw_lengths[block]);
+		long written = decoder.decode(bitReader, index.bits[block], Channels.newChannel(raw));
+		if (written != index.raw_lengths[block]) {
+			throw new IOException("Block " + block + " has the wrong size");
+		}
+		return raw.toByteArray();
+	}
+
+	/**
+	 * Decodes every block of a compressed file on a pool of threads,
+	 * writing each block straight to its place in the output file.
+	 *
+	 * Runtime: O(n/p)
+	 * (where n is the size of the file and p the number of cores)
+	 *
+	 * @param input The compressed file.
+	 * @param header The header of the compressed file.
+	 * @param output The file to write the decompressed text to.
+	 * @return The number of bytes written.
+	 * @throws IOException If a file cannot be read or written or is corrupt.
+	 */
+	public static long decode(final FileChannel input, final CompressedFile header,
+			final FileChannel output) throws IOException {
+		HuffmanDecoder decoder = new HuffmanDecoder(header);
+		BlockIndex index = readIndex(input);
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (int i = 0; i < index.offsets.length; i++) {
+				results.add(pool.submit(new DecodeTask(input, output, decoder, index, i)));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				try {
+					results.get(i).get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while decoding", e);
+				} catch (ExecutionException e) {
+					throw new IOException("Could not decode block " + i, e.getCause());
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		int last = index.offsets.length - 1;
+		return last < 0 ? 0 : index.raw_offsets[last] + index.raw_lengths[last];
+	}
+
+	/**
+	 * Fills the buffer from the given file position.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the buffer)
+	 *
+	 * @param input The file to read.
+	 * @param buffer The buffer to fill.
+	 * @param position The file position to start reading at.
+	 * @throws IOException If the file ends before the buffer is full.
+	 */
+	private static void readFully(final FileChannel input, final ByteBuffer buffer, final long position)
+			throws IOException {
+		long next = position;
+		while (buffer.hasRemaining()) {
+			int read = input.read(buffer, next);
+			if (read < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+			next += read;
+		}
+		buffer.flip();
+	}
+}
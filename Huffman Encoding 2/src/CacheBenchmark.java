@@ -0,0 +1,122 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Measures the MyCache class on the words of a text, read in order as
+ * an encoder would: each word is looked up, and put in the cache when
+ * it is missing. Prints the hit rate of both policies for several
+ * budgets, also with a key seen only once read between every two
+ * words, then how fast several threads can share one cache.
+ *
+ * Usage: CacheBenchmark [text file] [rounds]
+ *
+ */
+public class CacheBenchmark {
+
+	/**
+	 * Budgets to measure, in entries.
+	 */
+	private static final int[] BUDGETS = {64, 256, 1024, 4096, 16384};
+
+	/**
+	 * Thread counts to measure.
+	 */
+	private static final int[] THREADS = {1, 4, 16};
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		File file = new File(args.length > 0 ? args[0] : "WarAndPeace.txt");
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		String[] words = BenchmarkSupport.words(file);
+		System.out.println(words.length + " words, " + Runtime.getRuntime().availableProcessors()
+				+ " cores");
+
+		System.out.printf("%8s %10s %10s %16s%n", "budget", "LRU", "TINY_LFU", "with unique keys");
+		for (int budget : BUDGETS) {
+			System.out.printf("%8d %9.2f%% %9.2f%% %7.2f%% %7.2f%%%n", budget,
+					hitRate(words, budget, MyCache.LRU, false),
+					hitRate(words, budget, MyCache.TINY_LFU, false),
+					hitRate(words, budget, MyCache.LRU, true),
+					hitRate(words, budget, MyCache.TINY_LFU, true));
+		}
+
+		for (int policy : new int[] {MyCache.LRU, MyCache.TINY_LFU}) {
+			for (int threads : THREADS) {
+				long best = Long.MAX_VALUE;
+				for (int round = 0; round < rounds; round++) {
+					best = Math.min(best, read(words, threads, policy));
+				}
+				System.out.printf("%-8s %2d threads: %6.1f million lookups/s%n",
+						policy == MyCache.LRU ? "LRU" : "TINY_LFU", threads,
+						words.length * 1000.0 / best);
+			}
+		}
+	}
+
+	/**
+	 * Reads every word through a cache with one segment, so the policy
+	 * is applied to the whole budget at once.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the number of words)
+	 *
+	 * @param words The words to read.
+	 * @param budget The number of entries the cache holds.
+	 * @param policy The eviction policy.
+	 * @param scan Whether to read a key seen only once before each word.
+	 * @return The percentage of words that were hits.
+	 */
+	private static double hitRate(final String[] words, final int budget, final int policy,
+			final boolean scan) {
+		MyCache<String, String> cache = new MyCache<String, String>(budget, MyCache.ENTRIES,
+				policy, 1, HashStrategy.GOLDEN);
+		for (int i = 0; i < words.length; i++) {
+			if (scan) {
+				String unique = "#" + i;
+				if (cache.get(unique) == null) {
+					cache.put(unique, unique);
+				}
+			}
+			if (cache.get(words[i]) == null) {
+				cache.put(words[i], words[i]);
+			}
+		}
+		if (cache.size() > budget) {
+			throw new IllegalStateException("Cache holds " + cache.size() + " of " + budget);
+		}
+		return 100.0 * cache.hits() / words.length;
+	}
+
+	/**
+	 * Reads the words through one shared cache on the given number of
+	 * threads, each thread reading its own share.
+	 *
+	 * Runtime: O(n/p)
+	 * (where n is the number of words and p the number of threads)
+	 *
+	 * @param words The words to read.
+	 * @param threads The number of threads.
+	 * @param policy The eviction policy.
+	 * @return The running time in nanoseconds.
+	 * @throws InterruptedException If interrupted while waiting for the threads.
+	 */
+	private static long read(final String[] words, final int threads, final int policy)
+			throws InterruptedException {
+		final MyCache<String, String> cache = new MyCache<String, String>(4096, MyCache.ENTRIES,
+				policy, MyCache.DEFAULT_SEGMENTS, HashStrategy.GOLDEN);
+		long time = BenchmarkSupport.runShared(words.length, threads,
+				new BenchmarkSupport.Share() {
+					public void run(final int from, final int to) {
+						for (int j = from; j < to; j++) {
+							if (cache.get(words[j]) == null) {
+								cache.put(words[j], words[j]);
+							}
+						}
+					}
+				});
+
+		if (cache.hits() + cache.misses() != words.length || cache.size() > 4096) {
+			throw new IllegalStateException(cache.toString());
+		}
+		return time;
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ * A huffman code word stored as packed bits instead of a string
+ * of 1's and 0's.
+ *
+ */
+public class Code {
+
+	/**
+	 * The bits of the code, right aligned, first bit is the most significant.
+	 */
+	public final long bits;
+
+	/**
+	 * The number of bits in the code.
+	 */
+	public final int length;
+
+	/**
+	 * Creates a new code word.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param the_bits The bits of the code, right aligned.
+	 * @param the_length The number of bits in the code.
+	 */
+	public Code(final long the_bits, final int the_length) {
+		bits = the_bits;
+		length = the_length;
+	}
+
+	/**
+	 * Returns the code as a string of 1's and 0's.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the code)
+	 *
+	 * @return The string representation of the code.
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = length - 1; i >= 0; i--) {
+			sb.append((bits >>> i & 1) == 0 ? '0' : '1');
+		}
+		return sb.toString();
+	}
+}
@@ -1,5 +1,12 @@
-import java.util.Iterator;
-import java.util.PriorityQueue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
 
 /**
  * This class compiles codes for compressing text files.
@@ -9,9 +16,84 @@ import java.util.PriorityQueue;
 public class CodingTree {
 	
 	/**
-	 * Codes for each word to be compressed.
+	 * Default limit on the length of a code.
 	 */
-	public MyHashTable<String, String> codes;
+	public static final int DEFAULT_MAX_LENGTH = 32;
+	
+	/**
+	 * Longest code length allowed by the file format.
+	 */
+	public static final int MAX_LENGTH = 64;
+	
+	/**
+	 * Marks the start of a file of saved code lengths ("LEN1").
+	 */
+	public static final int CODES_MAGIC = 0x4C454E31;
+	
+	/**
+	 * Size of the header of a file of saved code lengths: magic number,
+	 * longest code length allowed and number of ids (4 bytes each),
+	 * then the encoded bits with and without that limit (8 bytes each).
+	 */
+	private static final int CODES_HEADER = 28;
+	
+	/**
+	 * Codes for each word to be compressed. Only filled for trees built
+	 * from strings, trees built from a SymbolTable use code_bits and
+	 * code_lengths.
+	 */
+	public MyHashTable<String, Code> codes;
+	
+	/**
+	 * Dense ids of the words and symbols.
+	 */
+	public SymbolTable table;
+	
+	/**
+	 * Code of each word or symbol, indexed by id.
+	 */
+	public long[] code_bits;
+	
+	/**
+	 * Code length of each word or symbol, indexed by id.
+	 */
+	public int[] code_lengths;
+	
+	/**
+	 * The id of every word or symbol, ordered by code length and then
+	 * by id. The symbols themselves stay in the table.
+	 */
+	public int[] ids;
+	
+	/**
+	 * Code length of each entry in ids.
+	 */
+	public int[] lengths;
+	
+	/**
+	 * Number of bits needed to encode the input.
+	 */
+	public long encoded_bits;
+	
+	/**
+	 * Number of bits the input would need without a limit on code length.
+	 */
+	public long unlimited_bits;
+	
+	/**
+	 * Longest code length allowed.
+	 */
+	private final int max_length;
+	
+	/**
+	 * The leaves of the tree in increasing order of weight.
+	 */
+	private Node[] by_weight;
+	
+	/**
+	 * Number of leaves visited while finding code lengths.
+	 */
+	private int leaves;
 	
 	/**
 	 * The root of the huffman tree.
@@ -28,14 +110,15 @@ public class CodingTree {
 	private class Node implements Comparable<Node> {
 		
 		/**
-		 * The word or symbol.
+		 * The id of the word or symbol, -1 for internal nodes.
 		 */
-		private String str;
+		private final int id;
 		
 		/**
-		 * Frequency of use for this word or symbol.
+		 * Total frequency of the words or symbols below this node.
+		 * Computed once when the node is created.
 		 */
-		private int freq;
+		private final long weight;
 		
 		/**
 		 * The left child.
@@ -48,35 +131,41 @@ public class CodingTree {
 		public Node right;
 		
 		/**
-		 * Creates a new node with given word or symbol and frequency.
+		 * Creates a new leaf with given word or symbol and frequency.
 		 * Runtime O(1)
 		 * 
-		 * @param the_str The word or symbol.
+		 * @param the_id The id of the word or symbol.
 		 * @param the_freq The frequency of use.
 		 */
-		public Node(final String the_str, final int the_freq) {
-			str = the_str;
-			freq = the_freq;
+		public Node(final int the_id, final long the_freq) {
+			id = the_id;
+			weight = the_freq;
+		}
+		
+		/**
+		 * Creates a new internal node with the given children.
+		 * Runtime O(1)
+		 * 
+		 * @param the_left The left child.
+		 * @param the_right The right child.
+		 */
+		public Node(final Node the_left, final Node the_right) {
+			id = -1;
+			left = the_left;
+			right = the_right;
+			weight = the_left.weight + the_right.weight;
 		}
 		
 		/**
 		 * Compares current node to another node based on weight.
-		 * Runtime: O(n)
-		 * (the weight method runs in linear time)
+		 * Runtime: O(1)
 		 * 
-		 * @param n The node to be compared.
+		 * @param other The node to be compared.
 		 * @return 1 if this node has greater weight, 0 if weights are equal,
 		 * -1 otherwise.
 		 */
-		public int compareTo(final Node n) {
-			Node other = (Node) n;
-			if (weight() > other.weight()) {
-				return 1;
-			} else if (weight() == other.weight()) {
-				return 0;
-			} else {
-				return -1;
-			}
+		public int compareTo(final Node other) {
+			return Long.compare(weight, other.weight);
 		}
 		
 		/**
@@ -85,75 +174,335 @@ public class CodingTree {
 		 * @return The string representation of the node.
 		 */
 		public String toString() {
-			return str + " - " + freq;
+			return id + " - " + weight;
 		}
 		
 		/**
-		 * Recursively finds the weight of the current node.
+		 * Returns the weight of the current node.
 		 * 
-		 * Runtime: O(n)
+		 * Runtime: O(1)
 		 * 
 		 * @return The weight.
 		 */
-		public int weight() {
-			int w = freq;
-			if (left != null) {
-				w += left.weight();
-			}
-			if (right != null) {
-				w += right.weight();
-			}
-			
-			return w;
+		public long weight() {
+			return weight;
+		}
+		
+		/**
+		 * Determines if this node is a leaf holding a word or symbol.
+		 * 
+		 * Runtime: O(1)
+		 * 
+		 * @return True for leaves, false for internal nodes.
+		 */
+		public boolean isLeaf() {
+			return left == null && right == null;
 		}
 	}
 	
 	/**
 	 * Creates a new coding tree by reading in a text file
 	 * and counting frequencies and creating a huffman tree
-	 * using MyHashTable class.
+	 * using MyCountTable class. Frequencies are counted on all
+	 * cores for large texts. The symbols are stored in UTF-8.
 	 * 
 	 * Runtime: O(nlogn)
 	 * 
 	 * @param message The text to generate a coding tree for.
 	 */
 	public CodingTree(final String message) {
-		int index = 0;
-		MyHashTable<String, Integer> freq_map = new MyHashTable<String, Integer>(16384);
-		codes = new MyHashTable<String, String>(16384); 
+		this(FrequencyCounter.count(message), DEFAULT_MAX_LENGTH);
+	}
+	
+	/**
+	 * Creates a new coding tree from symbol frequencies that have
+	 * already been counted, for example by a streaming pass over a file
+	 * that is too large to hold in memory.
+	 * 
+	 * Runtime: O(nlogn)
+	 * 
+	 * @param freq_map The frequency of each word or symbol.
+	 */
+	public CodingTree(final MyHashTable<String, Integer> freq_map) {
+		this(freq_map, DEFAULT_MAX_LENGTH);
+	}
+	
+	/**
+	 * Creates a new coding tree from symbol frequencies that have
+	 * already been counted, with no code longer than the given length.
+	 * 
+	 * Runtime: O(nlogn)
+	 * 
+	 * @param freq_map The frequency of each word or symbol.
+	 * @param the_max_length Longest code length allowed, from 1 to 64.
+	 */
+	public CodingTree(final MyHashTable<String, Integer> freq_map, final int the_max_length) {
+		this(toCounts(freq_map), the_max_length);
+	}
+	
+	/**
+	 * Creates a new coding tree from symbol counts, with no code
+	 * longer than the given length.
+	 * 
+	 * Runtime: O(nlogn)
+	 * 
+	 * @param freq_map The frequency of each word or symbol.
+	 * @param the_max_length Longest code length allowed, from 1 to 64.
+	 */
+	public CodingTree(final MyCountTable<String> freq_map, final int the_max_length) {
+		this(toTable(freq_map), the_max_length);
+		codes = new MyHashTable<String, Code>(16384);
+		for (int i = 0; i < ids.length; i++) {
+			codes.put(table.symbol(ids[i]), new Code(code_bits[ids[i]], code_lengths[ids[i]]));
+		}
+	}
+	
+	/**
+	 * Creates a new coding tree from symbols that were given ids and
+	 * counted in a symbol table. The codes can then be looked up by id,
+	 * without making a string for every word in the input.
+	 * 
+	 * Runtime: O(nlogn)
+	 * 
+	 * @param the_table The ids and counts of the words and symbols.
+	 */
+	public CodingTree(final SymbolTable the_table) {
+		this(the_table, DEFAULT_MAX_LENGTH);
+	}
+	
+	/**
+	 * Creates a new coding tree from symbols that were given ids and
+	 * counted in a symbol table, with no code longer than the given length.
+	 * The tree is built from the ids and counts alone, so a table that
+	 * lives off the heap does not put the whole vocabulary back on the
+	 * heap; the codes map is left empty.
+	 * 
+	 * Runtime: O(nlogn)
+	 * 
+	 * @param the_table The ids and counts of the words and symbols.
+	 * @param the_max_length Longest code length allowed, from 1 to 64.
+	 */
+	public CodingTree(final SymbolTable the_table, final int the_max_length) {
+		codes = null;
+		max_length = the_max_length;
 		root = null;
-		StringBuilder sb = new StringBuilder();
-		
-		while (index < message.length()) { //count frequencies
-			while (isWordChar(message.charAt(index))) {
-				sb.append(message.charAt(index));
-				index++;
-				if (index == message.length()) {
-					break;
-				}
+		table = the_table;
+		long[] freqs = new long[table.size()];
+		for (int i = 0; i < freqs.length; i++) {
+			freqs[i] = table.count(i);
+		}
+		build(freqs);
+	}
+	
+	/**
+	 * Creates a coding tree with room for the codes of every symbol in
+	 * a table, to be filled with saved code lengths.
+	 * 
+	 * Runtime: O(n)
+	 * 
+	 * @param the_table The ids of the words and symbols.
+	 * @param the_max_length Longest code length allowed.
+	 * @param the_encoded_bits Number of bits needed to encode the input.
+	 * @param the_unlimited_bits Number of bits without a limit on code length.
+	 */
+	private CodingTree(final SymbolTable the_table, final int the_max_length,
+			final long the_encoded_bits, final long the_unlimited_bits) {
+		codes = null;
+		max_length = the_max_length;
+		root = null;
+		table = the_table;
+		int n = table.size();
+		ids = new int[n];
+		lengths = new int[n];
+		code_bits = new long[n];
+		code_lengths = new int[n];
+		encoded_bits = the_encoded_bits;
+		unlimited_bits = the_unlimited_bits;
+	}
+	
+	/**
+	 * Opens the code lengths saved for a symbol table with the save
+	 * method. The codes are rebuilt from the lengths, by id, so neither
+	 * a string per symbol nor the huffman tree is needed again.
+	 * 
+	 * Runtime: O(n)
+	 * 
+	 * @param the_table The symbol table the code lengths were saved for.
+	 * @param file The file to open.
+	 * @return The coding tree, with an empty codes map.
+	 * @throws IOException If the file cannot be read or does not match the table.
+	 */
+	public static CodingTree open(final SymbolTable the_table, final File file)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() < CODES_HEADER) {
+				throw new IOException("Not a file of code lengths");
 			}
-			if (sb.length() == 0) {
-				sb.append(message.charAt(index));
-				index++;
+			ByteBuffer saved = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			int max_length = saved.getInt(4);
+			int count = saved.getInt(8);
+			if (saved.getInt(0) != CODES_MAGIC) {
+				throw new IOException("Not a file of code lengths");
 			}
-			String symbol = sb.toString();
-			if (freq_map.containsKey(symbol)) {
-				freq_map.put(symbol, freq_map.get(symbol) + 1);
-			} else {
-				freq_map.put(symbol, 1);
+			if (count != the_table.size() || channel.size() != CODES_HEADER + (long) count
+					|| max_length < 1 || max_length > MAX_LENGTH) {
+				throw new IOException("Code lengths do not match the symbol table");
 			}
-			sb = new StringBuilder();
+			CodingTree tree = new CodingTree(the_table, max_length, saved.getLong(12),
+					saved.getLong(20));
+			for (int id = 0; id < count; id++) {
+				int length = saved.get(CODES_HEADER + id);
+				if (length < 1 || length > max_length) {
+					throw new IOException("Malformed code length for id " + id);
+				}
+				tree.code_lengths[id] = length;
+			}
+			tree.assignCodes();
+			return tree;
+		}
+	}
+	
+	/**
+	 * Saves the code length of every id, one byte each, so the codes
+	 * can be opened again together with the saved symbol table.
+	 * 
+	 * Runtime: O(n)
+	 * 
+	 * @param file The file to write.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public void save(final File file) throws IOException {
+		ByteBuffer saved = ByteBuffer.allocate(CODES_HEADER + code_lengths.length);
+		saved.putInt(CODES_MAGIC);
+		saved.putInt(max_length);
+		saved.putInt(code_lengths.length);
+		saved.putLong(encoded_bits);
+		saved.putLong(unlimited_bits);
+		for (int id = 0; id < code_lengths.length; id++) {
+			saved.put((byte) code_lengths[id]);
+		}
+		saved.flip();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (saved.hasRemaining()) {
+				channel.write(saved);
+			}
+		}
+	}
+	
+	/**
+	 * Copies frequencies into a symbol table.
+	 * 
+	 * Runtime: O(n)
+	 * 
+	 * @param freq_map The frequency of each word or symbol.
+	 * @return The same frequencies in a symbol table.
+	 */
+	private static SymbolTable toTable(final MyCountTable<String> freq_map) {
+		SymbolTable table = new SymbolTable();
+		MyCountTable<String>.Cursor entry = freq_map.cursor();
+		while (entry.next()) {
+			table.add(entry.key(), entry.count());
+		}
+		return table;
+	}
+	
+	/**
+	 * Copies frequencies into a count table.
+	 * 
+	 * Runtime: O(n)
+	 * 
+	 * @param freq_map The frequency of each word or symbol.
+	 * @return The same frequencies in a count table.
+	 */
+	private static MyCountTable<String> toCounts(final MyHashTable<String, Integer> freq_map) {
+		MyCountTable<String> counts = new MyCountTable<String>(freq_map.size());
+		MyHashTable<String, Integer>.Cursor entry = freq_map.cursor();
+		while (entry.next()) {
+			counts.add(entry.key(), entry.value());
+		}
+		return counts;
+	}
+	
+	/**
+	 * Creates the huffman tree and the codes from the frequencies.
+	 * The leaves are sorted by frequency so the tree can be built
+	 * in linear time.
+	 * 
+	 * Runtime: O(nlogn)
+	 * 
+	 * @param freqs The frequency of each word or symbol, indexed by id.
+	 */
+	private void build(final long[] freqs) {
+		int n = freqs.length;
+		if (max_length < 1 || max_length > MAX_LENGTH
+				|| (max_length < 31 && n > 1 << max_length)) {
+			throw new IllegalArgumentException("Codes of " + max_length + " bits cannot hold "
+					+ n + " symbols");
 		}
 		
-		Iterator<String> itr = freq_map.keySet().iterator();
-		PriorityQueue<Node> q = new PriorityQueue<Node>();
-		
-		while (itr.hasNext()) { //get nodes in priority queue
-			String temp = itr.next();
-			q.add(new Node(temp, freq_map.get(temp)));
+		Node[] sorted = new Node[n];
+		int[] order = sortByFrequency(freqs);
+		for (int i = 0; i < order.length; i++) {
+			sorted[i] = new Node(order[i], freqs[order[i]]);
 		}
-		merge(q); //create tree
+		
+		ids = new int[n];
+		lengths = new int[n];
+		code_bits = new long[n];
+		code_lengths = new int[n];
+		encoded_bits = 0;
+		by_weight = sorted;
+		merge(sorted); //create tree
 		createCodes();
+		by_weight = null;
+	}
+	
+	/**
+	 * Sorts the ids of the symbols by frequency, and by id where the
+	 * frequencies are equal. When the largest frequency leaves enough
+	 * bits free, each frequency is packed with its id into one long and
+	 * the longs are sorted; otherwise the ids are sorted by comparing
+	 * their frequencies.
+	 * 
+	 * Runtime: O(nlogn)
+	 * 
+	 * @param freqs The frequency of each word or symbol, indexed by id.
+	 * @return The ids in increasing order of frequency.
+	 */
+	private static int[] sortByFrequency(final long[] freqs) {
+		int[] order = new int[freqs.length];
+		long max = 0;
+		for (int i = 0; i < freqs.length; i++) {
+			max = Math.max(max, freqs[i]);
+		}
+		int id_bits = 32 - Integer.numberOfLeadingZeros(freqs.length);
+		if (max >>> (63 - id_bits) == 0) {
+			// frequency in the high bits, id in the low bits
+			long[] packed = new long[freqs.length];
+			for (int i = 0; i < freqs.length; i++) {
+				packed[i] = freqs[i] << id_bits | i;
+			}
+			Arrays.sort(packed);
+			for (int i = 0; i < packed.length; i++) {
+				order[i] = (int) (packed[i] & ((1L << id_bits) - 1));
+			}
+			return order;
+		}
+		Integer[] ids = new Integer[freqs.length];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = i;
+		}
+		Arrays.sort(ids, new Comparator<Integer>() {
+			public int compare(final Integer a, final Integer b) {
+				int result = Long.compare(freqs[a], freqs[b]);
+				return result != 0 ? result : Integer.compare(a, b);
+			}
+		});
+		for (int i = 0; i < ids.length; i++) {
+			order[i] = ids[i];
+		}
+		return order;
 	}
 	
 	/**
@@ -165,66 +514,249 @@ public class CodingTree {
 	 * @param ch Character to test.
 	 * @return True if it is a valid word character, false otherwise.
 	 */
-	private boolean isWordChar(final Character ch) {
-		if((ch.compareTo('A') >= 0 && ch.compareTo('Z') <= 0) || (ch.compareTo('a') >= 0 && ch.compareTo('z') <= 0) 
-				|| (ch.compareTo('0') >= 0 && ch.compareTo('9') <= 0) || ch.equals('\'') || ch.compareTo('-') == 0) {
-			return true;
-		}
-		return false;
+	static boolean isWordChar(final char ch) {
+		return (ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z')
+				|| (ch >= '0' && ch <= '9') || ch == '\'' || ch == '-';
 	}
 	
 	/**
-	 * Merges the nodes together to create a huffman tree.
+	 * Finds the length of the separator at the given index: two
+	 * characters for a surrogate pair, which stands for a single
+	 * character, and one otherwise.
 	 * 
-	 * Runtime: Runtime: O(nlogn)
-	 * @param q The priority queue of nodes to merge
+	 * Runtime: O(1)
+	 * 
+	 * @param text The text holding the separator.
+	 * @param index Index of the first character of the separator.
+	 * @param end Index after the last character that may be read.
+	 * @return The number of characters of the separator.
 	 */
-	public void merge(final PriorityQueue<Node> q) {
-		boolean merged = false;
-		while (!merged) {
-			Node temp1 = q.poll();
-			if (!q.isEmpty()) {
-				Node new_node = new Node("a", 0);
-				Node temp2 = q.poll();
-				new_node.left = temp1;
-				new_node.right = temp2;
-				q.add(new_node);
-			} else {
-				q.add(temp1);
-				merged = true;
+	static int separatorLength(final CharSequence text, final int index, final int end) {
+		return index + 1 < end
+				&& Character.isSurrogatePair(text.charAt(index), text.charAt(index + 1)) ? 2 : 1;
+	}
+	
+	/**
+	 * Merges nodes that are already sorted by weight into a huffman tree
+	 * using two queues: the sorted leaves and the merged nodes. Merged
+	 * nodes are created in order of weight, so the two smallest nodes
+	 * are always at the front of the queues.
+	 * 
+	 * Runtime: O(n)
+	 * 
+	 * @param sorted The nodes to merge, in increasing order of weight.
+	 */
+	public void merge(final Node[] sorted) {
+		if (sorted.length <= 1) { //empty input or a single symbol
+			root = sorted.length == 0 ? null : sorted[0];
+			return;
+		}
+		Node[] merged = new Node[sorted.length - 1];
+		int next_leaf = 0;
+		int next_merged = 0;
+		for (int count = 0; count < merged.length; count++) {
+			Node smallest = null;
+			for (int i = 0; i < 2; i++) {
+				Node next;
+				if (next_leaf < sorted.length && (next_merged == count
+						|| sorted[next_leaf].weight <= merged[next_merged].weight)) {
+					next = sorted[next_leaf++];
+				} else {
+					next = merged[next_merged++];
+				}
+				if (smallest == null) {
+					smallest = next;
+				} else {
+					merged[count] = new Node(smallest, next);
+				}
 			}
 		}
-		
-		root = q.poll();
+		root = merged[merged.length - 1];
 	}
 	
 	/**
-	 * Wrapper method to createCodes.
+	 * Wrapper method to createCodes. Only the code lengths are taken
+	 * from the tree, the codes themselves are canonical, see assignCodes.
 	 * 
-	 * Runtime: O(1)
+	 * Runtime: O(n)
 	 */
 	public void createCodes() {
-		createCodes(root, "");
+		if (root == null) { //empty input
+			return;
+		}
+		if (root.isLeaf()) { //only one symbol, give it one bit
+			code_lengths[root.id] = 1;
+			encoded_bits = root.weight;
+			unlimited_bits = encoded_bits;
+			assignCodes();
+			return;
+		}
+		leaves = 0;
+		createCodes(root, 0);
+		unlimited_bits = encoded_bits;
+		limitLengths();
+		for (int i = 0; i < ids.length; i++) {
+			code_lengths[ids[i]] = lengths[i];
+		}
+		assignCodes();
 	}
 	
 	/**
-	 * Creates codes for the huffman tree where a left branch adds
-	 * a 0 and a right branch adds a 1.
+	 * Gives every id its canonical code from the code lengths: codes
+	 * of the same length are consecutive numbers in id order, and each
+	 * length starts right after the codes of the previous one. A
+	 * decoder can rebuild them from the symbols, written in the same
+	 * order, and the lengths alone. Fills ids and lengths in that
+	 * order, and code_bits.
+	 * 
+	 * Runtime: O(n)
+	 */
+	private void assignCodes() {
+		int[] start = new int[MAX_LENGTH + 2];
+		for (int id = 0; id < code_lengths.length; id++) {
+			start[code_lengths[id] + 1]++;
+		}
+		for (int i = 1; i < start.length; i++) {
+			start[i] += start[i - 1];
+		}
+		// ids are visited in increasing order, so each length stays sorted by id
+		for (int id = 0; id < code_lengths.length; id++) {
+			int i = start[code_lengths[id]]++;
+			ids[i] = id;
+			lengths[i] = code_lengths[id];
+		}
+		long[] bits = canonicalCodes(lengths);
+		for (int i = 0; i < ids.length; i++) {
+			code_bits[ids[i]] = bits[i];
+		}
+	}
+	
+	/**
+	 * Finds the code length of every leaf in the huffman tree
+	 * and the total length of the encoded input.
 	 * 
 	 * Runtime: O(n)
 	 *
 	 * @param current Current node being assessed.
-	 * @param code String of 1's and 0's that led to the current node.
+	 * @param length The depth of the current node.
 	 */
-	public void createCodes(final Node current, final String code) {
+	public void createCodes(final Node current, final int length) {
+		if (length > 64) {
+			throw new IllegalStateException("Code for " + current + " is longer than 64 bits");
+		}
 		if (current.left != null) {
-			createCodes(current.left, code + "0");
+			createCodes(current.left, length + 1);
 		}
-		if (current.freq != 0) {
-			codes.put(current.str, code);
+		if (current.isLeaf()) {
+			ids[leaves] = current.id;
+			lengths[leaves] = length;
+			leaves++;
+			encoded_bits += current.weight * length;
 		}
 		if (current.right != null) {
-			createCodes(current.right, code + "1");
+			createCodes(current.right, length + 1);
+		}
+	}
+	
+	/**
+	 * Finds optimal code lengths of at most max_length bits with the
+	 * package-merge algorithm, if the huffman tree is deeper than that.
+	 * Starting from the longest length, each list holds the leaves
+	 * merged with packages made by pairing up the items of the list
+	 * below. The first 2n - 2 items of the top list are chosen; a
+	 * chosen package chooses the two items it was made from, and each
+	 * leaf gets one bit for every list it is chosen in. Since leaves
+	 * are merged in order, the chosen leaves of a list are always the
+	 * lightest ones, so only the package flags need to be kept.
+	 * 
+	 * Runtime: O(nL)
+	 * (where L is max_length)
+	 */
+	private void limitLengths() {
+		int longest = 0;
+		for (int i = 0; i < lengths.length; i++) {
+			longest = Math.max(longest, lengths[i]);
+		}
+		if (longest <= max_length) {
+			return;
+		}
+		int n = by_weight.length;
+		int chosen = 2 * n - 2;
+		BitSet[] packages = new BitSet[max_length + 1];
+		long[] list = new long[n];
+		for (int i = 0; i < n; i++) {
+			list[i] = by_weight[i].weight;
+		}
+		packages[max_length] = new BitSet();
+		for (int level = max_length - 1; level >= 1; level--) {
+			int pairs = list.length / 2;
+			long[] merged = new long[Math.min(n + pairs, chosen)];
+			packages[level] = new BitSet(merged.length);
+			int leaf = 0;
+			int pair = 0;
+			for (int i = 0; i < merged.length; i++) {
+				if (pair < pairs && (leaf == n
+						|| list[2 * pair] + list[2 * pair + 1] < by_weight[leaf].weight)) {
+					merged[i] = list[2 * pair] + list[2 * pair + 1];
+					packages[level].set(i);
+					pair++;
+				} else {
+					merged[i] = by_weight[leaf++].weight;
+				}
+			}
+			list = merged;
+		}
+		
+		// the lightest leaves_chosen leaves each get one more bit
+		int[] extra = new int[n + 1];
+		for (int level = 1; level <= max_length && chosen > 0; level++) {
+			int packages_chosen = packages[level].get(0, chosen).cardinality();
+			int leaves_chosen = chosen - packages_chosen;
+			extra[0]++;
+			extra[leaves_chosen]--;
+			chosen = 2 * packages_chosen;
+		}
+		encoded_bits = 0;
+		int length = 0;
+		for (int i = 0; i < n; i++) {
+			length += extra[i];
+			ids[i] = by_weight[i].id;
+			lengths[i] = length;
+			encoded_bits += by_weight[i].weight * length;
+		}
+	}
+	
+	/**
+	 * Describes how many more bits the limit on code length costs,
+	 * as a percentage of the input size.
+	 * 
+	 * Runtime: O(1)
+	 * 
+	 * @param input_bits The size of the input in bits.
+	 * @return The description.
+	 */
+	public String limitCost(final long input_bits) {
+		return String.format(" (%+.3f%% with codes of at most %d bits)",
+				(encoded_bits - unlimited_bits) * 100.0 / input_bits, max_length);
+	}
+	
+	/**
+	 * Computes canonical codes from code lengths.
+	 * 
+	 * Runtime: O(n)
+	 * 
+	 * @param lengths Code lengths in increasing order.
+	 * @return The code for each length, right aligned.
+	 */
+	public static long[] canonicalCodes(final int[] lengths) {
+		long[] bits = new long[lengths.length];
+		long code = 0;
+		for (int i = 0; i < lengths.length; i++) {
+			if (i > 0) {
+				code = (code + 1) << (lengths[i] - lengths[i - 1]);
+			}
+			bits[i] = code;
 		}
+		return bits;
 	}
 }
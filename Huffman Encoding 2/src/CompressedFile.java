@@ -0,0 +1,270 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The header of a compressed file. A compressed file is a single
+ * binary file holding the header followed by the code bits:
+ *
+ * magic number (4 bytes), format (1 byte),
+ * number of code bits (8 bytes), number of symbols (4 bytes),
+ * longest code length (1 byte), number of codes of each length,
+ * then every symbol in canonical order as its byte count and bytes.
+ *
+ * In the STREAM format the code bits follow as one run. In the
+ * BLOCKS format they are split into independently decodable blocks,
+ * see the BlockCompressor class.
+ *
+ * Counts inside the header are stored 7 bits per byte, low bits
+ * first, with the high bit set on every byte but the last. Since
+ * the codes are canonical, the symbols and the number of codes of
+ * each length are enough to rebuild them.
+ *
+ */
+public class CompressedFile {
+
+	/**
+	 * Marks the start of a compressed file ("HUF2").
+	 */
+	public static final int MAGIC = 0x48554632;
+
+	/**
+	 * Byte offset of the number of code bits in the file, after the
+	 * magic number and the format.
+	 */
+	private static final int BITS_OFFSET = 5;
+
+	/**
+	 * Format of a file holding all code bits as one run.
+	 */
+	public static final int STREAM = 1;
+
+	/**
+	 * Format of a file holding the code bits as separate blocks.
+	 */
+	public static final int BLOCKS = 2;
+
+	/**
+	 * How the code bits after the header are laid out.
+	 */
+	public final int format;
+
+	/**
+	 * The bytes of every symbol in canonical order, for a header that
+	 * was read. Null for a header made from a coding tree, whose
+	 * symbols are written straight from its symbol table.
+	 */
+	public final byte[][] symbols;
+
+	/**
+	 * The table holding the symbols of a header made from a coding
+	 * tree, or null.
+	 */
+	private final SymbolTable table;
+
+	/**
+	 * The id of every symbol in canonical order, for a header made
+	 * from a coding tree, or null.
+	 */
+	private final int[] ids;
+
+	/**
+	 * Code length of each symbol, in canonical order.
+	 */
+	public final int[] lengths;
+
+	/**
+	 * Number of code bits after the header.
+	 */
+	public final long bits;
+
+	/**
+	 * Creates the header for input encoded with the given coding tree.
+	 * The symbols are not copied, they are read from the table of the
+	 * tree when the header is written.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param ct The coding tree.
+	 * @param the_format How the code bits are laid out, STREAM or BLOCKS.
+	 */
+	public CompressedFile(final CodingTree ct, final int the_format) {
+		format = the_format;
+		symbols = null;
+		table = ct.table;
+		ids = ct.ids;
+		lengths = ct.lengths;
+		bits = ct.encoded_bits;
+	}
+
+	/**
+	 * Creates a header from its parts.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param the_format How the code bits are laid out.
+	 * @param the_symbols The bytes of every symbol in canonical order.
+	 * @param the_lengths Code length of each symbol.
+	 * @param the_bits Number of code bits after the header.
+	 */
+	private CompressedFile(final int the_format, final byte[][] the_symbols, final int[] the_lengths,
+			final long the_bits) {
+		format = the_format;
+		symbols = the_symbols;
+		table = null;
+		ids = null;
+		lengths = the_lengths;
+		bits = the_bits;
+	}
+
+	/**
+	 * Writes the header.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the total size of the symbols)
+	 *
+	 * @param out The writer to write to.
+	 * @throws IOException If the header cannot be written.
+	 */
+	public void write(final BitWriter out) throws IOException {
+		int max_length = lengths.length == 0 ? 0 : lengths[lengths.length - 1];
+		out.write(MAGIC, 32);
+		out.write(format, 8);
+		out.write(bits, 64);
+		out.write(lengths.length, 32);
+		out.write(max_length, 8);
+		int index = 0;
+		for (int length = 1; length <= max_length; length++) {
+			int count = 0;
+			while (index < lengths.length && lengths[index] == length) {
+				count++;
+				index++;
+			}
+			writeCount(out, count);
+		}
+		for (int i = 0; i < lengths.length; i++) {
+			if (symbols != null) {
+				writeCount(out, symbols[i].length);
+				for (int j = 0; j < symbols[i].length; j++) {
+					out.write(symbols[i][j] & 0xFF, 8);
+				}
+			} else {
+				ByteBuffer symbol = table.bytes(ids[i]);
+				writeCount(out, symbol.limit());
+				for (int j = 0; j < symbol.limit(); j++) {
+					out.write(symbol.get(j) & 0xFF, 8);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Overwrites the number of code bits in a header already written
+	 * to the start of a file, for code bits counted while they were
+	 * written rather than worked out from the coding tree beforehand.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param channel The file holding the header.
+	 * @param code_bits The number of code bits after the header.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public static void writeBits(final FileChannel channel, final long code_bits)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		buffer.putLong(0, code_bits);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, BITS_OFFSET + buffer.position());
+		}
+	}
+
+	/**
+	 * Reads a header.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the total size of the symbols)
+	 *
+	 * @param in The reader to read from.
+	 * @return The header.
+	 * @throws IOException If the header cannot be read or is malformed.
+	 */
+	public static CompressedFile read(final BitReader in) throws IOException {
+		if (in.read(32) != MAGIC) {
+			throw new IOException("Not a compressed file");
+		}
+		int format = in.read(8);
+		if (format != STREAM && format != BLOCKS) {
+			throw new IOException("Unsupported format " + format);
+		}
+		long bits = (long) in.read(32) << 32 | (in.read(32) & 0xFFFFFFFFL);
+		int count = in.read(32);
+		int max_length = in.read(8);
+		if (count < 0 || max_length > 64) {
+			throw new IOException("Malformed header");
+		}
+		int[] lengths = new int[count];
+		int index = 0;
+		for (int length = 1; length <= max_length; length++) {
+			int n = readCount(in);
+			if (n > count - index) {
+				throw new IOException("Malformed header");
+			}
+			for (int i = 0; i < n; i++) {
+				lengths[index++] = length;
+			}
+		}
+		if (index != count) {
+			throw new IOException("Malformed header");
+		}
+		byte[][] symbols = new byte[count][];
+		for (int i = 0; i < count; i++) {
+			symbols[i] = new byte[readCount(in)];
+			for (int j = 0; j < symbols[i].length; j++) {
+				symbols[i][j] = (byte) in.read(8);
+			}
+		}
+		return new CompressedFile(format, symbols, lengths, bits);
+	}
+
+	/**
+	 * Writes a non-negative count, 7 bits per byte.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param out The writer to write to.
+	 * @param count The count to write.
+	 * @throws IOException If the count cannot be written.
+	 */
+	private static void writeCount(final BitWriter out, final int count) throws IOException {
+		int rest = count;
+		while (rest >= 0x80) {
+			out.write(rest & 0x7F | 0x80, 8);
+			rest >>>= 7;
+		}
+		out.write(rest, 8);
+	}
+
+	/**
+	 * Reads a count written by writeCount.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param in The reader to read from.
+	 * @return The count.
+	 * @throws IOException If the count cannot be read or is malformed.
+	 */
+	private static int readCount(final BitReader in) throws IOException {
+		int count = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.read(8);
+			count |= (b & 0x7F) << shift;
+			if (b < 0x80) {
+				if (count < 0) {
+					throw new IOException("Malformed header");
+				}
+				return count;
+			}
+		}
+		throw new IOException("Malformed header");
+	}
+}
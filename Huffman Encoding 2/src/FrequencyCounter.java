@@ -0,0 +1,192 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts word and separator frequencies in a text on all cores.
+ * The text is split in half until the pieces are small enough,
+ * always at a separator so no word is cut in two. Each piece is
+ * counted into its own table and the tables are merged on the
+ * way back up, giving the same frequencies as a sequential count.
+ *
+ */
+public class FrequencyCounter extends RecursiveTask<MyCountTable<String>> {
+
+	/**
+	 * Pieces with at most this many characters are counted directly.
+	 */
+	public static final int THRESHOLD = 1 << 18;
+
+	/**
+	 * Pool shared by all counts.
+	 */
+	private static final ForkJoinPool POOL = new ForkJoinPool();
+
+	/**
+	 * Version number for serialization.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The text being counted.
+	 */
+	private final String message;
+
+	/**
+	 * Index of the first character of this piece.
+	 */
+	private final int from;
+
+	/**
+	 * Index after the last character of this piece.
+	 */
+	private final int to;
+
+	/**
+	 * Creates a new task counting part of the text.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param the_message The text being counted.
+	 * @param the_from Index of the first character to count.
+	 * @param the_to Index after the last character to count.
+	 */
+	private FrequencyCounter(final String the_message, final int the_from, final int the_to) {
+		message = the_message;
+		from = the_from;
+		to = the_to;
+	}
+
+	/**
+	 * Counts the frequency of every word and separator in the text.
+	 *
+	 * Runtime: O(n/p)
+	 * (where n is the length of the text and p the number of cores)
+	 *
+	 * @param message The text to count.
+	 * @return The frequency of each word or symbol.
+	 */
+	public static MyCountTable<String> count(final String message) {
+		if (message.length() <= THRESHOLD) {
+			return countRange(message, 0, message.length());
+		}
+		return POOL.invoke(new FrequencyCounter(message, 0, message.length()));
+	}
+
+	/**
+	 * Counts this piece, splitting it first if it is too large.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the piece)
+	 *
+	 * @return The frequency of each word or symbol in the piece.
+	 */
+	protected MyCountTable<String> compute() {
+		if (to - from <= THRESHOLD) {
+			return countRange(message, from, to);
+		}
+		int middle = split(message, from, to);
+		if (middle == -1) {
+			return countRange(message, from, to); // one word, nowhere to split
+		}
+		FrequencyCounter left = new FrequencyCounter(message, from, middle);
+		FrequencyCounter right = new FrequencyCounter(message, middle, to);
+		left.fork();
+		MyCountTable<String> right_map = right.compute();
+		MyCountTable<String> left_map = left.join();
+		return merge(left_map, right_map);
+	}
+
+	/**
+	 * Finds where to split part of the text, as close to its middle as
+	 * possible without cutting a word or a surrogate pair in two: the
+	 * first boundary after the middle, or else the last one before it.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the part)
+	 *
+	 * @param message The text.
+	 * @param from Index of the first character of the part.
+	 * @param to Index after the last character of the part.
+	 * @return The index to split at, strictly between from and to, or
+	 * -1 if the part is a single word.
+	 */
+	private static int split(final String message, final int from, final int to) {
+		int middle = (from + to) >>> 1;
+		for (int i = middle; i < to; i++) {
+			if (isBoundary(message, i)) {
+				return i;
+			}
+		}
+		for (int i = middle - 1; i > from; i--) {
+			if (isBoundary(message, i)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Determines if the text can be split before the given index,
+	 * which is the case next to a separator unless the index is in
+	 * the middle of a surrogate pair.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param message The text.
+	 * @param index Index of the character after the split.
+	 * @return True if the text can be split there, false otherwise.
+	 */
+	private static boolean isBoundary(final String message, final int index) {
+		char before = message.charAt(index - 1);
+		char after = message.charAt(index);
+		return (!CodingTree.isWordChar(before) || !CodingTree.isWordChar(after))
+				&& !Character.isSurrogatePair(before, after);
+	}
+
+	/**
+	 * Counts part of the text on the current thread.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the part)
+	 *
+	 * @param message The text to count.
+	 * @param from Index of the first character to count.
+	 * @param to Index after the last character to count.
+	 * @return The frequency of each word or symbol.
+	 */
+	private static MyCountTable<String> countRange(final String message, final int from,
+			final int to) {
+		MyCountTable<String> freq_map = new MyCountTable<String>(16384);
+		int index = from;
+		while (index < to) {
+			int start = index;
+			while (index < to && CodingTree.isWordChar(message.charAt(index))) {
+				index++;
+			}
+			if (index == start) {
+				index += CodingTree.separatorLength(message, index, to);
+			}
+			freq_map.increment(message.substring(start, index));
+		}
+		return freq_map;
+	}
+
+	/**
+	 * Adds the counts of one table to another.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the number of entries in the second table)
+	 *
+	 * @param into The table to add to.
+	 * @param from The table of counts to add.
+	 * @return The table holding the sum of both.
+	 */
+	private static MyCountTable<String> merge(final MyCountTable<String> into,
+			final MyCountTable<String> from) {
+		MyCountTable<String>.Cursor entry = from.cursor();
+		while (entry.next()) {
+			into.add(entry.key(), entry.count());
+		}
+		return into;
+	}
+}
@@ -0,0 +1,160 @@
+/**
+ * Estimates how often each key has been seen recently, in a fixed
+ * amount of memory (a count-min sketch). Every key is counted in one
+ * counter of each of DEPTH rows, picked by its hash; other keys share
+ * those counters, so the smallest of them is the estimate, and it is
+ * never too low. Counters stop at MAX_COUNT, and all of them are
+ * halved after every SAMPLE_FACTOR times the width increments, so
+ * keys that were popular long ago fade out.
+ *
+ * Used by the MyCache class to decide whether a new key is worth
+ * evicting an old one (TinyLFU admission).
+ *
+ */
+public class FrequencySketch {
+
+	/**
+	 * Number of rows.
+	 */
+	private static final int DEPTH = 4;
+
+	/**
+	 * Largest value of a counter.
+	 */
+	private static final int MAX_COUNT = 15;
+
+	/**
+	 * Number of increments, as a multiple of the width, between halvings.
+	 */
+	private static final int SAMPLE_FACTOR = 10;
+
+	/**
+	 * The counters of all rows, one row after the other.
+	 */
+	private byte[] counters;
+
+	/**
+	 * Number of counters in each row, always a power of two.
+	 */
+	private int width;
+
+	/**
+	 * Number of increments since the counters were last halved.
+	 */
+	private int additions;
+
+	/**
+	 * Creates a new sketch for about the given number of keys.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the given number of keys)
+	 *
+	 * @param the_keys The number of keys to tell apart.
+	 */
+	public FrequencySketch(final int the_keys) {
+		width = 16;
+		while (width < the_keys) {
+			width *= 2;
+		}
+		counters = new byte[DEPTH * width];
+	}
+
+	/**
+	 * Counts one more occurrence of a key.
+	 *
+	 * Runtime: O(1)
+	 * (amortized over halving the counters)
+	 *
+	 * @param hash The hash of the key.
+	 */
+	public void increment(final int hash) {
+		boolean added = false;
+		for (int row = 0; row < DEPTH; row++) {
+			int index = index(hash, row);
+			if (counters[index] < MAX_COUNT) {
+				counters[index]++;
+				added = true;
+			}
+		}
+		if (added && ++additions == SAMPLE_FACTOR * width) {
+			age();
+		}
+	}
+
+	/**
+	 * Estimates how often a key has been seen.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param hash The hash of the key.
+	 * @return The estimate, from 0 to MAX_COUNT.
+	 */
+	public int frequency(final int hash) {
+		int frequency = MAX_COUNT;
+		for (int row = 0; row < DEPTH; row++) {
+			frequency = Math.min(frequency, counters[index(hash, row)]);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Makes room for more keys if the sketch is too small for the
+	 * given number. The width doubles until it is large enough, and
+	 * the counts are kept: a key whose counter was at index i of a row
+	 * lands at i or at i plus the old width, so both get the old value.
+	 * The counts are then halved, since a sketch too narrow for its
+	 * keys fills up, and a full sketch would rate every new key as
+	 * highly as the keys it would evict.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the given number of keys, when the sketch grows)
+	 *
+	 * @param keys The number of keys to tell apart.
+	 */
+	public void ensureCapacity(final int keys) {
+		if (width >= keys) {
+			return;
+		}
+		while (width < keys) {
+			byte[] old_counters = counters;
+			int old_width = width;
+			width *= 2;
+			counters = new byte[DEPTH * width];
+			for (int row = 0; row < DEPTH; row++) {
+				System.arraycopy(old_counters, row * old_width, counters, row * width, old_width);
+				System.arraycopy(old_counters, row * old_width, counters, row * width + old_width,
+						old_width);
+			}
+		}
+		age();
+	}
+
+	/**
+	 * Halves every counter.
+	 *
+	 * Runtime: O(w)
+	 * (where w is the width of the sketch)
+	 */
+	private void age() {
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] >>= 1;
+		}
+		additions /= 2;
+	}
+
+	/**
+	 * Picks the counter of a key in a row. Each row adds a different
+	 * multiple of the rotated hash, so keys whose hashes share their
+	 * low bits still meet in only some of the rows.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param hash The hash of the key.
+	 * @param row The row.
+	 * @return The index of the counter in counters.
+	 */
+	private int index(final int hash, final int row) {
+		int step = Integer.rotateLeft(hash, 16) | 1;
+		return row * width + ((hash + row * step) & (width - 1));
+	}
+}
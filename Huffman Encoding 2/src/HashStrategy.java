@@ -0,0 +1,172 @@
+import java.security.SecureRandom;
+
+/**
+ * Turns a key into the 32 bit hash a hash table works with. The
+ * tables pick a slot from the low bits of the hash and the
+ * MyConcurrentHashTable class picks a segment from the high bits, so
+ * every bit of the hash should depend on every bit of the key.
+ *
+ * GOLDEN and MURMUR scramble the hashCode of the key, so keys with
+ * nearby hash codes, such as numbers or words that differ in the last
+ * letter, end up far apart. Keys with equal hash codes still collide;
+ * for strings these are easy to make on purpose ("Aa" and "BB" have
+ * the same hashCode, and so do all strings made of them). Seeded
+ * hashes the characters themselves with a secret seed, so such
+ * strings no longer collide.
+ *
+ * @param <K> Key type.
+ */
+public interface HashStrategy<K> {
+
+	/**
+	 * Multiplies the hash code by the golden ratio and folds the high
+	 * bits into the low bits. The cheapest strategy, and the default.
+	 */
+	HashStrategy<Object> GOLDEN = new HashStrategy<Object>() {
+		public int hash(final Object key) {
+			int hash = key.hashCode() * 0x9E3779B9;
+			return hash ^ (hash >>> 16);
+		}
+	};
+
+	/**
+	 * Runs the hash code through the MurmurHash3 finalizer, which
+	 * flips about half of the output bits for every input bit.
+	 */
+	HashStrategy<Object> MURMUR = new HashStrategy<Object>() {
+		public int hash(final Object key) {
+			return Murmur.mix(key.hashCode());
+		}
+	};
+
+	/**
+	 * Hashes a key.
+	 *
+	 * @param key The key, never null.
+	 * @return The hash of the key.
+	 */
+	int hash(K key);
+
+	/**
+	 * The steps of MurmurHash3 (32 bit), for hashing keys that are
+	 * not objects, such as a range of bytes.
+	 */
+	final class Murmur {
+
+		/**
+		 * Utility class.
+		 */
+		private Murmur() {
+		}
+
+		/**
+		 * Mixes a block of four bytes into a running hash.
+		 *
+		 * Runtime: O(1)
+		 *
+		 * @param hash The running hash.
+		 * @param block The block.
+		 * @return The new running hash.
+		 */
+		public static int round(final int hash, final int block) {
+			int k = Integer.rotateLeft(block * 0xCC9E2D51, 15) * 0x1B873593;
+			return Integer.rotateLeft(hash ^ k, 13) * 5 + 0xE6546B64;
+		}
+
+		/**
+		 * Mixes the last, partial block into a running hash.
+		 *
+		 * Runtime: O(1)
+		 *
+		 * @param hash The running hash.
+		 * @param block The remaining bytes, in the low bits.
+		 * @return The new running hash.
+		 */
+		public static int tail(final int hash, final int block) {
+			return hash ^ Integer.rotateLeft(block * 0xCC9E2D51, 15) * 0x1B873593;
+		}
+
+		/**
+		 * Finishes a hash so every output bit depends on every input bit.
+		 *
+		 * Runtime: O(1)
+		 *
+		 * @param the_hash The hash.
+		 * @return The mixed hash.
+		 */
+		public static int mix(final int the_hash) {
+			int hash = the_hash;
+			hash ^= hash >>> 16;
+			hash *= 0x85EBCA6B;
+			hash ^= hash >>> 13;
+			hash *= 0xC2B2AE35;
+			return hash ^ (hash >>> 16);
+		}
+	}
+
+	/**
+	 * Hashes the characters of a string with MurmurHash3 and a seed.
+	 * Keys made to collide for one seed are spread out for another,
+	 * so the seed should be kept secret, and each table given its own.
+	 * Costs one pass over the key for every lookup, where the other
+	 * strategies reuse the cached hashCode of a String.
+	 *
+	 * MurmurHash3 is not a cryptographic hash, so a caller who can
+	 * watch the timing of many lookups may still be able to find
+	 * collisions; it stops inputs prepared in advance.
+	 */
+	final class Seeded implements HashStrategy<CharSequence> {
+
+		/**
+		 * Source of random seeds.
+		 */
+		private static final SecureRandom RANDOM = new SecureRandom();
+
+		/**
+		 * The seed.
+		 */
+		private final int seed;
+
+		/**
+		 * Creates a new strategy with a random seed.
+		 *
+		 * Runtime: O(1)
+		 */
+		public Seeded() {
+			this(RANDOM.nextInt());
+		}
+
+		/**
+		 * Creates a new strategy with the given seed.
+		 *
+		 * Runtime: O(1)
+		 *
+		 * @param the_seed The seed.
+		 */
+		public Seeded(final int the_seed) {
+			seed = the_seed;
+		}
+
+		/**
+		 * Hashes the characters two at a time.
+		 *
+		 * Runtime: O(n)
+		 * (where n is the length of the key)
+		 *
+		 * @param key The key.
+		 * @return The hash of the key.
+		 */
+		public int hash(final CharSequence key) {
+			int hash = seed;
+			int length = key.length();
+			int i = 0;
+			for (; i + 1 < length; i += 2) {
+				hash = Murmur.round(hash, key.charAt(i) | key.charAt(i + 1) << 16);
+			}
+			if (i < length) {
+				hash = Murmur.tail(hash, key.charAt(i));
+			}
+			return Murmur.mix(hash ^ 2 * length);
+		}
+	}
+}
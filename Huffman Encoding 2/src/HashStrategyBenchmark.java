@@ -0,0 +1,163 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Compares the hash strategies of the MyHashTable class on three sets
+ * of keys: the vocabulary of a text, numbers written out as strings,
+ * and strings made to have equal hash codes. For each strategy it
+ * prints how far entries sit from their home slot and how long it
+ * takes to put and then get every key.
+ *
+ * Usage: HashStrategyBenchmark [text file] [rounds]
+ *
+ */
+public class HashStrategyBenchmark {
+
+	/**
+	 * Number of numeric keys.
+	 */
+	private static final int NUMBERS = 200000;
+
+	/**
+	 * Number of "Aa" or "BB" pairs in each colliding key, giving
+	 * 2 to this power keys.
+	 */
+	private static final int PAIRS = 13;
+
+	/**
+	 * Number of probe lengths to print before summing up the rest.
+	 */
+	private static final int SHOWN = 6;
+
+	public static void main(String[] args) throws IOException {
+		File file = new File(args.length > 0 ? args[0] : "WarAndPeace.txt");
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		String[] numbers = new String[NUMBERS];
+		for (int i = 0; i < NUMBERS; i++) {
+			numbers[i] = Integer.toString(i);
+		}
+		String[] colliding = new String[1 << PAIRS];
+		for (int i = 0; i < colliding.length; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int j = 0; j < PAIRS; j++) {
+				sb.append((i >>> j & 1) == 0 ? "Aa" : "BB");
+			}
+			colliding[i] = sb.toString();
+		}
+
+		ArrayList<HashStrategy<? super String>> strategies =
+				new ArrayList<HashStrategy<? super String>>();
+		strategies.add(new HashStrategy<Object>() {
+			public int hash(final Object key) {
+				return key.hashCode();
+			}
+		});
+		strategies.add(HashStrategy.GOLDEN);
+		strategies.add(HashStrategy.MURMUR);
+		strategies.add(new HashStrategy.Seeded());
+		String[] names = {"hashCode", "golden", "murmur", "seeded"};
+
+		// Let the JIT compile every strategy before timing any of them.
+		for (int j = 0; j < strategies.size(); j++) {
+			measure(names[j], strategies.get(j), numbers, rounds);
+		}
+
+		String[][] key_sets = {vocabulary(file), numbers, colliding};
+		String[] set_names = {"vocabulary of " + file.getName(), "numbers", "equal hash codes"};
+		for (int i = 0; i < key_sets.length; i++) {
+			System.out.println(key_sets[i].length + " keys, " + set_names[i]);
+			System.out.printf("  %-9s %8s %6s %8s  %s%n", "strategy", "average", "max", "ns/key",
+					"entries by probe length");
+			for (int j = 0; j < strategies.size(); j++) {
+				System.out.println(measure(names[j], strategies.get(j), key_sets[i], rounds));
+			}
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Fills a table with the keys and describes its probe lengths and
+	 * the best time to put and get every key.
+	 *
+	 * Runtime: O(r * n * p)
+	 * (where r is the number of rounds, n the number of keys and p
+	 * the average probe length)
+	 *
+	 * @param name The name of the strategy.
+	 * @param strategy The strategy.
+	 * @param keys The keys.
+	 * @param rounds The number of times to time filling the table.
+	 * @return One line of the results.
+	 */
+	private static String measure(final String name, final HashStrategy<? super String> strategy,
+			final String[] keys, final int rounds) {
+		MyHashTable<String, Integer> table = null;
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < rounds; round++) {
+			long time = System.nanoTime();
+			table = new MyHashTable<String, Integer>(16, strategy);
+			for (int i = 0; i < keys.length; i++) {
+				table.put(keys[i], i);
+			}
+			for (int i = 0; i < keys.length; i++) {
+				if (table.get(keys[i]) != i) {
+					throw new IllegalStateException("Lost " + keys[i]);
+				}
+			}
+			best = Math.min(best, System.nanoTime() - time);
+		}
+
+		ArrayList<Integer> probe_lengths = table.probeLengths();
+		long total = 0;
+		StringBuilder shown = new StringBuilder();
+		int rest = 0;
+		for (int i = 1; i < probe_lengths.size(); i++) {
+			total += (long) i * probe_lengths.get(i);
+			if (i <= SHOWN) {
+				shown.append(shown.length() == 0 ? "" : " ").append(probe_lengths.get(i));
+			} else {
+				rest += probe_lengths.get(i);
+			}
+		}
+		return String.format("  %-9s %8.3f %6d %8.1f  %s | %d", name, (double) total / keys.length,
+				probe_lengths.size() - 1, (double) best / keys.length, shown, rest);
+	}
+
+	/**
+	 * Finds the distinct words and separators of a file, in random
+	 * order. Keys copied in the slot order of a table with the same
+	 * strategy would land in long runs of full slots while the new
+	 * table is still small, and time the copy rather than the strategy.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the file)
+	 *
+	 * @param file The file to read.
+	 * @return Each distinct token once, shuffled.
+	 * @throws IOException If the file cannot be read.
+	 */
+	private static String[] vocabulary(final File file) throws IOException {
+		MyCountTable<String> counts = new MyCountTable<String>(16384);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			Tokenizer tokenizer = new Tokenizer(channel);
+			String word;
+			while ((word = tokenizer.next()) != null) {
+				counts.increment(word);
+			}
+		}
+		String[] words = new String[counts.size()];
+		MyCountTable<String>.Cursor entry = counts.cursor();
+		Random random = new Random(1);
+		for (int i = 0; entry.next(); i++) {
+			int j = random.nextInt(i + 1);
+			words[i] = words[j];
+			words[j] = entry.key();
+		}
+		return words;
+	}
+}
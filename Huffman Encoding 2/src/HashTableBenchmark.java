@@ -0,0 +1,74 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Measures how fast several threads can count words in one shared
+ * MyConcurrentHashTable. Every thread counts its own share of the
+ * words of a text, so the total work is the same for every thread count.
+ *
+ * Usage: HashTableBenchmark [text file] [rounds]
+ *
+ */
+public class HashTableBenchmark {
+
+	/**
+	 * Thread counts to measure.
+	 */
+	private static final int[] THREADS = {1, 4, 16, 32};
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		File file = new File(args.length > 0 ? args[0] : "WarAndPeace.txt");
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		String[] words = BenchmarkSupport.words(file);
+		System.out.println(words.length + " words, " + Runtime.getRuntime().availableProcessors()
+				+ " cores");
+
+		for (int segments : new int[] {1, MyConcurrentHashTable.DEFAULT_SEGMENTS}) {
+			for (int threads : THREADS) {
+				long best = Long.MAX_VALUE;
+				for (int round = 0; round < rounds; round++) {
+					best = Math.min(best, count(words, threads, segments));
+				}
+				System.out.printf("%2d segments, %2d threads: %6.1f million merges/s%n", segments,
+						threads, words.length * 1000.0 / best);
+			}
+		}
+	}
+
+	/**
+	 * Counts the words on the given number of threads.
+	 *
+	 * Runtime: O(n/p)
+	 * (where n is the number of words and p the number of threads)
+	 *
+	 * @param words The words to count.
+	 * @param threads The number of threads.
+	 * @param segments The number of segments of the table.
+	 * @return The running time in nanoseconds.
+	 * @throws InterruptedException If interrupted while waiting for the threads.
+	 */
+	private static long count(final String[] words, final int threads, final int segments)
+			throws InterruptedException {
+		final MyConcurrentHashTable<String, Integer> table =
+				new MyConcurrentHashTable<String, Integer>(16384, segments);
+		long time = BenchmarkSupport.runShared(words.length, threads,
+				new BenchmarkSupport.Share() {
+					public void run(final int from, final int to) {
+						for (int j = from; j < to; j++) {
+							table.merge(words[j], 1, MyConcurrentHashTable.SUM);
+						}
+					}
+				});
+
+		final long[] total = new long[1];
+		table.forEach(new MyHashTable.Visitor<String, Integer>() {
+			public void visit(final String word, final Integer count) {
+				total[0] += count;
+			}
+		});
+		if (total[0] != words.length) {
+			throw new IllegalStateException("Counted " + total[0] + " of " + words.length + " words");
+		}
+		return time;
+	}
+}
@@ -0,0 +1,90 @@
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Publishes the counters of a hash table through JMX, so a running
+ * program can be watched with jconsole or any other JMX client. Each
+ * attribute takes a fresh snapshot. The counters of a MyHashTable
+ * are read without locking, so values may lag behind the thread
+ * using the table.
+ *
+ */
+public class HashTableMonitor implements HashTableMonitorMXBean {
+
+	/**
+	 * The table being watched.
+	 */
+	private final HashTableStats.Source table;
+
+	/**
+	 * Creates a new monitor for the given table.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param the_table The table to watch.
+	 */
+	public HashTableMonitor(final HashTableStats.Source the_table) {
+		table = the_table;
+	}
+
+	/**
+	 * Registers a monitor for the given table with the platform MBean
+	 * server, under the name "MyHashTable:name=" followed by the given name.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param table The table to watch.
+	 * @param name The name to show for the table.
+	 * @return The name the monitor was registered under.
+	 * @throws JMException If the monitor cannot be registered.
+	 */
+	public static ObjectName register(final HashTableStats.Source table, final String name)
+			throws JMException {
+		ObjectName object_name = new ObjectName("MyHashTable:name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(new HashTableMonitor(table),
+				object_name);
+		return object_name;
+	}
+
+	public int getEntries() {
+		return table.snapshot().entries;
+	}
+
+	public int getCapacity() {
+		return table.snapshot().capacity;
+	}
+
+	public long getGets() {
+		return table.snapshot().gets;
+	}
+
+	public long getHits() {
+		return table.snapshot().hits;
+	}
+
+	public long getMisses() {
+		return table.snapshot().misses;
+	}
+
+	public long getPuts() {
+		return table.snapshot().puts;
+	}
+
+	public long getProbes() {
+		return table.snapshot().probes;
+	}
+
+	public double getAverageProbe() {
+		return table.snapshot().averageProbe();
+	}
+
+	public int getMaxProbe() {
+		return table.snapshot().max_probe;
+	}
+
+	public int getResizes() {
+		return table.snapshot().resizes;
+	}
+}
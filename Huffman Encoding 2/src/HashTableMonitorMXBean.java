@@ -0,0 +1,57 @@
+/**
+ * Management interface for watching the counters of a hash table
+ * through JMX, see the HashTableMonitor class.
+ *
+ */
+public interface HashTableMonitorMXBean {
+
+	/**
+	 * @return Number of key value pairs.
+	 */
+	int getEntries();
+
+	/**
+	 * @return Number of slots.
+	 */
+	int getCapacity();
+
+	/**
+	 * @return Number of lookups by get or containsKey.
+	 */
+	long getGets();
+
+	/**
+	 * @return Number of lookups that found their key.
+	 */
+	long getHits();
+
+	/**
+	 * @return Number of lookups that did not find their key.
+	 */
+	long getMisses();
+
+	/**
+	 * @return Number of puts.
+	 */
+	long getPuts();
+
+	/**
+	 * @return Number of slots looked at by all lookups and puts.
+	 */
+	long getProbes();
+
+	/**
+	 * @return Average number of slots looked at by a lookup or put.
+	 */
+	double getAverageProbe();
+
+	/**
+	 * @return Longest probe sequence of any entry since the last resize.
+	 */
+	int getMaxProbe();
+
+	/**
+	 * @return Number of times the table has grown.
+	 */
+	int getResizes();
+}
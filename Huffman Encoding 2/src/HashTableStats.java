@@ -0,0 +1,163 @@
+/**
+ * A snapshot of the counters kept by a hash table while it is used.
+ * Taking a snapshot does not scan the table, so it is cheap enough
+ * to do while the table is in use.
+ *
+ */
+public class HashTableStats {
+
+	/**
+	 * A hash table that keeps counters.
+	 */
+	public interface Source {
+
+		/**
+		 * Takes a snapshot of the counters.
+		 *
+		 * @return The snapshot.
+		 */
+		HashTableStats snapshot();
+	}
+
+	/**
+	 * Number of key value pairs.
+	 */
+	public final int entries;
+
+	/**
+	 * Number of slots.
+	 */
+	public final int capacity;
+
+	/**
+	 * Number of lookups by get or containsKey.
+	 */
+	public final long gets;
+
+	/**
+	 * Number of lookups that found their key.
+	 */
+	public final long hits;
+
+	/**
+	 * Number of lookups that did not find their key.
+	 */
+	public final long misses;
+
+	/**
+	 * Number of puts and removes.
+	 */
+	public final long puts;
+
+	/**
+	 * Number of slots looked at by all lookups and puts.
+	 */
+	public final long probes;
+
+	/**
+	 * Longest probe sequence of any entry since the last resize.
+	 */
+	public final int max_probe;
+
+	/**
+	 * Number of times the table has grown.
+	 */
+	public final int resizes;
+
+	/**
+	 * Creates a new snapshot.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param the_entries Number of key value pairs.
+	 * @param the_capacity Number of slots.
+	 * @param the_gets Number of lookups.
+	 * @param the_hits Number of lookups that found their key.
+	 * @param the_misses Number of lookups that did not find their key.
+	 * @param the_puts Number of puts.
+	 * @param the_probes Number of slots looked at.
+	 * @param the_max_probe Longest probe sequence.
+	 * @param the_resizes Number of times the table has grown.
+	 */
+	public HashTableStats(final int the_entries, final int the_capacity, final long the_gets,
+			final long the_hits, final long the_misses, final long the_puts, final long the_probes,
+			final int the_max_probe, final int the_resizes) {
+		entries = the_entries;
+		capacity = the_capacity;
+		gets = the_gets;
+		hits = the_hits;
+		misses = the_misses;
+		puts = the_puts;
+		probes = the_probes;
+		max_probe = the_max_probe;
+		resizes = the_resizes;
+	}
+
+	/**
+	 * Combines this snapshot with the snapshot of another table, for
+	 * example another segment of the same concurrent table.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param other The other snapshot.
+	 * @return The combined snapshot.
+	 */
+	public HashTableStats plus(final HashTableStats other) {
+		return new HashTableStats(entries + other.entries, capacity + other.capacity,
+				gets + other.gets, hits + other.hits, misses + other.misses, puts + other.puts,
+				probes + other.probes, Math.max(max_probe, other.max_probe),
+				resizes + other.resizes);
+	}
+
+	/**
+	 * Returns the fraction of slots in use.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @return The load factor, from 0 to 1.
+	 */
+	public double loadFactor() {
+		return capacity == 0 ? 0 : (double) entries / capacity;
+	}
+
+	/**
+	 * Returns the fraction of lookups that found their key.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @return The hit rate, from 0 to 1.
+	 */
+	public double hitRate() {
+		return gets == 0 ? 0 : (double) hits / gets;
+	}
+
+	/**
+	 * Returns the average number of slots looked at by a lookup or put.
+	 * A well spread hash keeps this close to 1.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @return The average probe length.
+	 */
+	public double averageProbe() {
+		return gets + puts == 0 ? 0 : (double) probes / (gets + puts);
+	}
+
+	/**
+	 * Generates a string representation of the snapshot.
+	 *
+	 * @return String representation of the snapshot.
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Entries: ").append(entries);
+		sb.append(", Capacity: ").append(capacity);
+		sb.append(", Gets: ").append(gets);
+		sb.append(" (").append(hits).append(" hits, ").append(misses).append(" misses)");
+		sb.append(", Puts: ").append(puts);
+		sb.append(", Average Probe per Lookup or Put: ").append(String.format("%.3f", averageProbe()));
+		sb.append(", Max Probe: ").append(max_probe);
+		sb.append(", Resizes: ").append(resizes);
+		return sb.toString();
+	}
+}
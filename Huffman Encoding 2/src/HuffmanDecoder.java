@@ -0,0 +1,204 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Decodes files written by the compressor. Codes of up to LOOKUP_BITS
+ * bits are decoded with a single table lookup, longer codes look up
+ * their first LOOKUP_BITS bits and then read one bit at a time,
+ * using the fact that canonical codes of the same length are
+ * consecutive numbers.
+ *
+ */
+public class HuffmanDecoder {
+
+	/**
+	 * Number of bits decoded by one table lookup.
+	 */
+	public static final int LOOKUP_BITS = 11;
+
+	/**
+	 * Size of the output buffer in bytes.
+	 */
+	public static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Table entry for bit patterns that start a code longer than LOOKUP_BITS.
+	 */
+	private static final int LONG_CODE = -1;
+
+	/**
+	 * The bytes of each symbol, in canonical order.
+	 */
+	private final byte[][] symbols;
+
+	/**
+	 * Decoding table indexed by the next LOOKUP_BITS bits of input.
+	 * Entries hold symbol << 4 | code length, or LONG_CODE.
+	 */
+	private final int[] table;
+
+	/**
+	 * The first code of each length.
+	 */
+	private final long[] first_code;
+
+	/**
+	 * The index in symbols of the first code of each length.
+	 */
+	private final int[] first_symbol;
+
+	/**
+	 * The number of codes of each length.
+	 */
+	private final int[] count;
+
+	/**
+	 * The longest code length.
+	 */
+	private final int max_length;
+
+	/**
+	 * Creates a new decoder for the symbols and code lengths in a header.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the number of symbols)
+	 *
+	 * @param header The header of the compressed file.
+	 */
+	public HuffmanDecoder(final CompressedFile header) {
+		symbols = header.symbols;
+		int[] lengths = header.lengths;
+		long[] bits = CodingTree.canonicalCodes(lengths);
+		max_length = lengths.length == 0 ? 0 : lengths[lengths.length - 1];
+		first_code = new long[max_length + 1];
+		first_symbol = new int[max_length + 1];
+		count = new int[max_length + 1];
+		for (int i = lengths.length - 1; i >= 0; i--) {
+			first_code[lengths[i]] = bits[i];
+			first_symbol[lengths[i]] = i;
+			count[lengths[i]]++;
+		}
+		table = new int[1 << LOOKUP_BITS];
+		Arrays.fill(table, LONG_CODE);
+		for (int i = 0; i < lengths.length && lengths[i] <= LOOKUP_BITS; i++) {
+			int shift = LOOKUP_BITS - lengths[i];
+			int from = (int) bits[i] << shift;
+			Arrays.fill(table, from, from + (1 << shift), i << 4 | lengths[i]);
+		}
+	}
+
+	/**
+	 * Decodes the given number of bits and writes the symbols to the channel.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the number of bits)
+	 *
+	 * @param in The bits to decode.
+	 * @param bits The number of bits to decode.
+	 * @param out The channel to write the symbols to.
+	 * @return The number of bytes written.
+	 * @throws IOException If the input is corrupt or a channel fails.
+	 */
+	public long decode(final BitReader in, final long bits, final WritableByteChannel out)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		long consumed = 0;
+		long written = 0;
+		while (consumed < bits) {
+			int entry = table[in.peek(LOOKUP_BITS)];
+			int symbol;
+			if (entry >= 0) {
+				symbol = entry >>> 4;
+				in.skip(entry & 15);
+				consumed += entry & 15;
+			} else {
+				long code = in.read(LOOKUP_BITS);
+				int length = LOOKUP_BITS;
+				do {
+					if (length >= max_length) {
+						throw new IOException("Invalid code at bit " + consumed);
+					}
+					code = code << 1 | in.readBit();
+					length++;
+				} while (code < first_code[length] || code - first_code[length] >= count[length]);
+				symbol = first_symbol[length] + (int) (code - first_code[length]);
+				consumed += length;
+			}
+			byte[] bytes = symbols[symbol];
+			if (buffer.remaining() < bytes.length) {
+				drain(buffer, out);
+				if (bytes.length > buffer.capacity()) {
+					ByteBuffer large = ByteBuffer.wrap(bytes);
+					while (large.hasRemaining()) {
+						out.write(large);
+					}
+					written += bytes.length;
+					continue;
+				}
+			}
+			buffer.put(bytes);
+			written += bytes.length;
+		}
+		if (consumed != bits) {
+			throw new IOException("Last code runs past the end of the input");
+		}
+		drain(buffer, out);
+		return written;
+	}
+
+	/**
+	 * Writes the contents of the buffer to the channel and clears it.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the buffer)
+	 *
+	 * @param buffer The buffer to write.
+	 * @param out The channel to write to.
+	 * @throws IOException If the channel cannot be written.
+	 */
+	private static void drain(final ByteBuffer buffer, final WritableByteChannel out)
+			throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Decompresses a file and prints the running time.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the file)
+	 *
+	 * @param in The compressed file.
+	 * @param out The file to write the decompressed text to.
+	 * @throws IOException If a file cannot be read or written or is corrupt.
+	 */
+	public static void decompress(final File in, final File out) throws IOException {
+		long start = System.currentTimeMillis();
+
+		long written;
+		try (FileChannel input = FileChannel.open(in.toPath(), StandardOpenOption.READ);
+				FileChannel output = FileChannel.open(out.toPath(), StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			BitReader bitReader = new BitReader(input);
+			CompressedFile header = CompressedFile.read(bitReader);
+			if (header.format == CompressedFile.BLOCKS) {
+				written = BlockCompressor.decode(input, header, output);
+			} else {
+				written = new HuffmanDecoder(header).decode(bitReader, header.bits, output);
+			}
+		}
+
+		long duration = System.currentTimeMillis() - start;
+
+		System.out.println("Decompressed file size: " + written + " bytes");
+		System.out.println("Running Time: " + duration + " milliseconds");
+	}
+}
@@ -1,7 +1,8 @@
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 
 /**
  * This class written by UW-Tacoma instructor Chris Marriot
@@ -10,16 +11,59 @@ import java.io.IOException;
 public class Main {
 
 	public static void main(String[] args) throws IOException {
+		if (args.length >= 3 && args[0].equals("-count")) {
+			// count once and save the symbols and their code lengths for later runs to map
+			SymbolTable table = new SymbolTable();
+			StreamCompressor.countFrequencies(new File(args[1]), true, table);
+			table.save(new File(args[2]));
+			new CodingTree(table, args.length == 4 ? Integer.parseInt(args[3])
+					: CodingTree.DEFAULT_MAX_LENGTH).save(new File(args[2] + ".codes"));
+			System.out.println("Symbols: " + table.size());
+			return;
+		} else if (args.length >= 4 && args[0].equals("-table")) {
+			// -map with the symbols and codes saved by -count, skipping counting and
+			// building the tree, unless a new longest code length is asked for
+			SymbolTable table = SymbolTable.open(new File(args[1]));
+			File codes = new File(args[1] + ".codes");
+			if (args.length == 4 && codes.exists()) {
+				StreamCompressor.compress(new File(args[2]), new File(args[3]),
+						CodingTree.open(table, codes), true);
+			} else {
+				StreamCompressor.compress(new File(args[2]), new File(args[3]), table, true,
+						args.length == 5 ? Integer.parseInt(args[4]) : CodingTree.DEFAULT_MAX_LENGTH);
+			}
+			return;
+		}
+		// compressing modes take the longest code length as an optional last argument
+		int maxLength = args.length == 4 ? Integer.parseInt(args[3]) : CodingTree.DEFAULT_MAX_LENGTH;
+		if (args.length >= 3 && args[0].equals("-stream")) {
+			// two pass mode for inputs too large to hold in memory
+			StreamCompressor.compress(new File(args[1]), new File(args[2]), false, maxLength);
+			return;
+		} else if (args.length >= 3 && args[0].equals("-map")) {
+			// same as -stream, but the input is memory mapped
+			StreamCompressor.compress(new File(args[1]), new File(args[2]), true, maxLength);
+			return;
+		} else if (args.length >= 3 && args[0].equals("-blocks")) {
+			// independently decodable blocks, encoded on all cores
+			BlockCompressor.compress(new File(args[1]), new File(args[2]), maxLength);
+			return;
+		} else if (args.length == 3 && args[0].equals("-decode")) {
+			HuffmanDecoder.decompress(new File(args[1]), new File(args[2]));
+			return;
+		}
+		
 		long start = System.currentTimeMillis();
 		long duration = 0;
 		
-		FileReader inputStream = null;
+		InputStreamReader inputStream = null;
 		String fileName = "WarAndPeace.txt";
 		FileOutputStream outputStream = new FileOutputStream(new File("compressed.txt"));
-		FileOutputStream codeStream = new FileOutputStream(new File("codes.txt"));
 		
 		try {
-				inputStream = new FileReader(fileName);
+				// read the text as UTF-8, which the symbols are stored in, so the
+				// decoder writes the same bytes back (-stream keeps any bytes)
+				inputStream = new InputStreamReader(new FileInputStream(fileName), SymbolTable.CHARSET);
 				int c;
 				StringBuffer str = new StringBuffer();
 				
@@ -32,56 +76,47 @@ public class Main {
 				// pass list of characters to constructor
 				// constructor carries out all operations 
 				// necessary for creating the encoding
-				CodingTree ct = new CodingTree(new String(str));
-				// write the code file
-				codeStream.write(ct.codes.toString().getBytes());
-				codeStream.close();
+				String text = new String(str);
+				CodingTree ct = new CodingTree(text);
 				
-				MyHashTable<String, String> ht = ct.codes;
+				MyHashTable<String, Code> ht = ct.codes;
 				ht.stats();
 				
-				StringBuffer codeBuffer = new StringBuffer();
-				StringBuffer wordBuffer = new StringBuffer();
-				long asciiCost = str.length()*8;
-				long compressedCost = 0;
-				for(int i = 0; i < str.length(); i++){
-					Character ch = str.charAt(i);
-					if((ch.compareTo('A') >= 0 && ch.compareTo('Z') <= 0) || (ch.compareTo('a') >= 0 && ch.compareTo('z') <= 0) 
-							|| (ch.compareTo('0') >= 0 && ch.compareTo('9') <= 0) || ch.equals('\'') || ch.compareTo('-') == 0) {
-						wordBuffer.append(ch);
-					}
-					else { // separator
-						String codeStr = new String(wordBuffer);
-						// add the word's codeword to the buffer
-						if(codeStr.length()>0){
-							codeBuffer.append(ht.get(codeStr));		
+				// the code table goes in a binary header in front of the codes
+				BitWriter bitWriter = new BitWriter(outputStream.getChannel());
+				new CompressedFile(ct, CompressedFile.STREAM).write(bitWriter);
+				// words are looked up by id straight from the text
+				SymbolTable ids = ct.table;
+				int wordStart = 0;
+				long asciiCost = new File(fileName).length()*8;
+				for(int i = 0; i < text.length(); i++){
+					if(!CodingTree.isWordChar(text.charAt(i))) { // separator
+						// add the word's codeword to the output
+						if(i > wordStart){
+							int id = ids.find(text, wordStart, i - wordStart);
+							bitWriter.write(ct.code_bits[id], ct.code_lengths[id]);
 						}
-						// add the separator's codeword to the buffer
-						codeBuffer.append(ht.get(ch.toString()));
-						wordBuffer = new StringBuffer();
+						// add the separator's codeword to the output
+						int length = CodingTree.separatorLength(text, i, text.length());
+						int id = ids.find(text, i, length);
+						bitWriter.write(ct.code_bits[id], ct.code_lengths[id]);
+						i += length - 1;
+						wordStart = i + 1;
 					}
-					if(codeBuffer.length() > 256){
-						while(codeBuffer.length() > 8){
-							int chr = Integer.parseInt(codeBuffer.substring(0, 8),2);
-							outputStream.write(chr);
-							codeBuffer.delete(0, 8);
-							compressedCost += 8;
-						}
-					}					
 				}
-				compressedCost += codeBuffer.length();
-				while(codeBuffer.length() > 8){
-					int chr = Integer.parseInt(codeBuffer.substring(0, 8),2);
-					outputStream.write(chr);
-					codeBuffer.delete(0, 8);
+				if(text.length() > wordStart){ // last word has no separator after it
+					int id = ids.find(text, wordStart, text.length() - wordStart);
+					bitWriter.write(ct.code_bits[id], ct.code_lengths[id]);
 				}
+				bitWriter.finish();
+				long compressedCost = bitWriter.bitsWritten();
 				outputStream.close();
 				
 				duration = System.currentTimeMillis() - start;
 
 				System.out.println("Uncompressed file size: " + asciiCost/8 + " bytes");
 				System.out.println("Compressed file size: " + compressedCost/8 + " bytes");
-				System.out.println("Compression ratio: " + compressedCost*100/asciiCost + "%");
+				System.out.println("Compression ratio: " + compressedCost*100/asciiCost + "%" + ct.limitCost(asciiCost));
 				System.out.println("Running Time: " + duration + " milliseconds");
 		} finally {}
 	}
@@ -0,0 +1,697 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hash table that holds at most a given budget of entries, for keeping
+ * the hot part of a larger dictionary in memory. The budget counts
+ * entries, or anything else a Weigher measures, such as bytes. When an
+ * entry would take the cache over budget, the least recently used
+ * entries are evicted to make room.
+ *
+ * The TINY_LFU policy (W-TinyLFU) keeps a small window of new entries
+ * in front of the main part of the cache. An entry leaving the window
+ * only gets into the main part if a FrequencySketch says it has been
+ * asked for more often than the entry it would evict there, so a
+ * burst of keys seen once cannot flush out the keys that are asked
+ * for all the time.
+ *
+ * Like the MyConcurrentHashTable class the cache is split into
+ * segments, each with its own lock, its own share of the budget and
+ * its own recency lists. Every lookup moves its entry to the front of
+ * its list, so readers take the lock as well; threads reading keys in
+ * different segments never wait for each other.
+ *
+ * @param <K> Key type.
+ * @param <V> Value type.
+ */
+public class MyCache<K, V> {
+
+	/**
+	 * Measures how much of the budget an entry takes.
+	 *
+	 * @param <K> Key type.
+	 * @param <V> Value type.
+	 */
+	public interface Weigher<K, V> {
+
+		/**
+		 * Measures an entry.
+		 *
+		 * @param key The key.
+		 * @param value The value.
+		 * @return The weight of the entry, at least 0.
+		 */
+		long weigh(K key, V value);
+	}
+
+	/**
+	 * Fetches the value of a key that is not in the cache.
+	 *
+	 * @param <K> Key type.
+	 * @param <V> Value type.
+	 */
+	public interface Loader<K, V> {
+
+		/**
+		 * Fetches a value.
+		 *
+		 * @param key The key.
+		 * @return The value of the key, or null if it has none.
+		 * @throws IOException If the value cannot be read.
+		 */
+		V load(K key) throws IOException;
+	}
+
+	/**
+	 * Policy evicting the least recently used entry.
+	 */
+	public static final int LRU = 1;
+
+	/**
+	 * Policy keeping new entries in a window and evicting whichever of
+	 * an entry leaving the window and the least recently used entry of
+	 * the main part has been asked for less often.
+	 */
+	public static final int TINY_LFU = 2;
+
+	/**
+	 * Share of the budget of a segment taken by the window under
+	 * TINY_LFU, in percent.
+	 */
+	private static final int WINDOW_PERCENT = 1;
+
+	/**
+	 * Default number of segments.
+	 */
+	public static final int DEFAULT_SEGMENTS = 16;
+
+	/**
+	 * Weigher counting every entry as 1, so the budget is a number of entries.
+	 */
+	public static final Weigher<Object, Object> ENTRIES = new Weigher<Object, Object>() {
+		public long weigh(final Object key, final Object value) {
+			return 1;
+		}
+	};
+
+	/**
+	 * An entry, linked into a recency list of its segment.
+	 *
+	 * @param <K> Key type.
+	 * @param <V> Value type.
+	 */
+	private static class Node<K, V> {
+
+		/**
+		 * The key.
+		 */
+		K key;
+
+		/**
+		 * The value.
+		 */
+		V value;
+
+		/**
+		 * The hash of the key.
+		 */
+		int hash;
+
+		/**
+		 * The weight of the entry.
+		 */
+		long weight;
+
+		/**
+		 * Whether the entry is in the window or in the main part.
+		 */
+		boolean in_window;
+
+		/**
+		 * The entry used just before this one, or the head of the list.
+		 */
+		Node<K, V> previous;
+
+		/**
+		 * The entry used just after this one, or the head of the list.
+		 */
+		Node<K, V> next;
+	}
+
+	/**
+	 * One segment of the cache, with its entries indexed by key and
+	 * linked from the most to the least recently used, in a list for
+	 * the window and a list for the main part.
+	 *
+	 * @param <K> Key type.
+	 * @param <V> Value type.
+	 */
+	private static class Segment<K, V> {
+
+		/**
+		 * Guards everything in the segment.
+		 */
+		final ReentrantLock lock = new ReentrantLock();
+
+		/**
+		 * The entries by key.
+		 */
+		final MyHashTable<K, Node<K, V>> index;
+
+		/**
+		 * Head of the recency list of the window; window.next is the
+		 * most recently used entry and window.previous the least.
+		 */
+		final Node<K, V> window = new Node<K, V>();
+
+		/**
+		 * Head of the recency list of the main part.
+		 */
+		final Node<K, V> main = new Node<K, V>();
+
+		/**
+		 * Recent frequencies of keys, or null for the LRU policy.
+		 */
+		final FrequencySketch sketch;
+
+		/**
+		 * The largest total weight of the segment.
+		 */
+		final long budget;
+
+		/**
+		 * The largest total weight of the window.
+		 */
+		final long window_budget;
+
+		/**
+		 * The total weight of the entries.
+		 */
+		long weight;
+
+		/**
+		 * The total weight of the entries in the window.
+		 */
+		long window_weight;
+
+		/**
+		 * Number of lookups that found their key.
+		 */
+		long hits;
+
+		/**
+		 * Number of lookups that did not find their key.
+		 */
+		long misses;
+
+		/**
+		 * Number of entries evicted to make room.
+		 */
+		long evictions;
+
+		/**
+		 * Number of entries leaving the window that were dropped because
+		 * they were used less than the entry they would have evicted.
+		 */
+		long rejections;
+
+		/**
+		 * Creates a new empty segment.
+		 *
+		 * Runtime: O(1)
+		 *
+		 * @param the_budget The largest total weight.
+		 * @param the_policy LRU or TINY_LFU.
+		 * @param the_strategy Hashes the keys.
+		 */
+		Segment(final long the_budget, final int the_policy,
+				final HashStrategy<? super K> the_strategy) {
+			budget = the_budget;
+			window_budget = the_policy == TINY_LFU ? the_budget * WINDOW_PERCENT / 100 : 0;
+			index = new MyHashTable<K, Node<K, V>>(16, the_strategy);
+			sketch = the_policy == TINY_LFU ? new FrequencySketch(16) : null;
+			window.previous = window;
+			window.next = window;
+			main.previous = main;
+			main.next = main;
+		}
+	}
+
+	/**
+	 * Hashes the keys, both to pick a segment and within the segment.
+	 */
+	private final HashStrategy<? super K> strategy;
+
+	/**
+	 * Measures the entries.
+	 */
+	private final Weigher<? super K, ? super V> weigher;
+
+	/**
+	 * The segments, each holding the keys with the same top hash bits.
+	 */
+	private final ArrayList<Segment<K, V>> segments;
+
+	/**
+	 * Number of hash bits not used to pick a segment.
+	 */
+	private final int shift;
+
+	/**
+	 * Creates a new LRU cache holding at most the given number of entries.
+	 *
+	 * Runtime: O(s)
+	 * (where s is the default number of segments)
+	 *
+	 * @param the_entries The largest number of entries.
+	 */
+	public MyCache(final long the_entries) {
+		this(the_entries, ENTRIES, LRU, DEFAULT_SEGMENTS, HashStrategy.GOLDEN);
+	}
+
+	/**
+	 * Creates a new cache. The budget is split evenly between the
+	 * segments, the first segments taking one more unit each where it
+	 * does not divide evenly, so the budgets of the segments add up to
+	 * the budget of the cache. An entry heavier than the budget of its
+	 * segment is never kept.
+	 *
+	 * Runtime: O(s)
+	 * (where s is the number of segments)
+	 *
+	 * @param the_budget The largest total weight of the entries.
+	 * @param the_weigher Measures the entries.
+	 * @param the_policy LRU or TINY_LFU.
+	 * @param the_segments The number of segments, rounded up to a power of
+	 * two, then halved until no segment has a budget of 0.
+	 * @param the_strategy Hashes the keys.
+	 */
+	public MyCache(final long the_budget, final Weigher<? super K, ? super V> the_weigher,
+			final int the_policy, final int the_segments,
+			final HashStrategy<? super K> the_strategy) {
+		if (the_policy != LRU && the_policy != TINY_LFU) {
+			throw new IllegalArgumentException("Unknown policy " + the_policy);
+		}
+		strategy = the_strategy;
+		weigher = the_weigher;
+		int bits = 0;
+		while (1 << bits < the_segments) {
+			bits++;
+		}
+		while (bits > 0 && 1L << bits > the_budget) {
+			bits--;
+		}
+		shift = 32 - bits;
+		segments = new ArrayList<Segment<K, V>>(1 << bits);
+		long remainder = the_budget & ((1 << bits) - 1);
+		for (int i = 0; i < 1 << bits; i++) {
+			segments.add(new Segment<K, V>((the_budget >> bits) + (i < remainder ? 1 : 0),
+					the_policy, strategy));
+		}
+	}
+
+	/**
+	 * Returns the value of the given key and marks it as just used.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param key The key to look up.
+	 * @return The value of the key, or null if it is not in the cache.
+	 */
+	public V get(final K key) {
+		int hash = strategy.hash(key);
+		Segment<K, V> segment = segment(hash);
+		segment.lock.lock();
+		try {
+			if (segment.sketch != null) {
+				segment.sketch.increment(hash);
+			}
+			Node<K, V> node = segment.index.get(key);
+			if (node == null) {
+				segment.misses++;
+				return null;
+			}
+			segment.hits++;
+			unlink(node);
+			linkFirst(node.in_window ? segment.window : segment.main, node);
+			return node.value;
+		} finally {
+			segment.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the value of the given key, fetching and caching it if it
+	 * is not in the cache. The segment is not locked while the value
+	 * is fetched, so two threads missing the same key may both fetch it.
+	 *
+	 * Runtime: O(1)
+	 * (plus the time to fetch a missing value)
+	 *
+	 * @param key The key to look up.
+	 * @param loader Fetches the value on a miss.
+	 * @return The value of the key, or null if the loader has none.
+	 * @throws IOException If the loader cannot read the value.
+	 */
+	public V get(final K key, final Loader<? super K, ? extends V> loader) throws IOException {
+		V value = get(key);
+		if (value == null) {
+			value = loader.load(key);
+			if (value != null) {
+				put(key, value, false);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Puts a key value pair in the cache, replacing the value if the
+	 * key is already in it, and evicts entries until the segment of
+	 * the key is within its budget again. An entry heavier than the
+	 * budget of its segment is not kept.
+	 *
+	 * Runtime: O(1)
+	 * (amortized, each entry is evicted at most once)
+	 *
+	 * @param key The key for the new entry.
+	 * @param value The value for the new entry.
+	 */
+	public void put(final K key, final V value) {
+		put(key, value, true);
+	}
+
+	/**
+	 * Puts a key value pair in the cache, counting a new key in the
+	 * sketch only if asked, so a miss filled by a loader is counted
+	 * once, by the lookup that missed.
+	 *
+	 * Runtime: O(1)
+	 * (amortized, each entry is evicted at most once)
+	 *
+	 * @param key The key for the new entry.
+	 * @param value The value for the new entry.
+	 * @param access Whether a new key counts as an access.
+	 */
+	private void put(final K key, final V value, final boolean access) {
+		int hash = strategy.hash(key);
+		long weight = weigher.weigh(key, value);
+		Segment<K, V> segment = segment(hash);
+		segment.lock.lock();
+		try {
+			Node<K, V> node = segment.index.get(key);
+			if (node != null) {
+				remove(segment, node);
+			}
+			if (weight > segment.budget) {
+				return;
+			}
+			if (node == null) {
+				node = new Node<K, V>();
+				node.key = key;
+				node.hash = hash;
+				node.in_window = true;
+				if (segment.sketch != null) {
+					segment.sketch.ensureCapacity(segment.index.size() + 1);
+					if (access) {
+						segment.sketch.increment(hash);
+					}
+				}
+			}
+			node.value = value;
+			node.weight = weight;
+			segment.index.put(key, node);
+			segment.weight += weight;
+			if (node.in_window) {
+				segment.window_weight += weight;
+			}
+			linkFirst(node.in_window ? segment.window : segment.main, node);
+			evict(segment);
+		} finally {
+			segment.lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the given key from the cache, for example after its
+	 * value has changed in the dictionary the cache is in front of.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param key The key to remove.
+	 * @return The value the key had in the cache, or null if it was not in it.
+	 */
+	public V remove(final K key) {
+		Segment<K, V> segment = segment(strategy.hash(key));
+		segment.lock.lock();
+		try {
+			Node<K, V> node = segment.index.get(key);
+			if (node == null) {
+				return null;
+			}
+			remove(segment, node);
+			return node.value;
+		} finally {
+			segment.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of entries.
+	 *
+	 * Runtime: O(s)
+	 * (where s is the number of segments)
+	 *
+	 * @return The number of entries.
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment<K, V> segment : segments) {
+			segment.lock.lock();
+			try {
+				size += segment.index.size();
+			} finally {
+				segment.lock.unlock();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the total weight of the entries.
+	 *
+	 * Runtime: O(s)
+	 * (where s is the number of segments)
+	 *
+	 * @return The total weight.
+	 */
+	public long weight() {
+		long weight = 0;
+		for (Segment<K, V> segment : segments) {
+			segment.lock.lock();
+			try {
+				weight += segment.weight;
+			} finally {
+				segment.lock.unlock();
+			}
+		}
+		return weight;
+	}
+
+	/**
+	 * Returns the number of lookups that found their key.
+	 *
+	 * Runtime: O(s)
+	 * (where s is the number of segments)
+	 *
+	 * @return The number of hits.
+	 */
+	public long hits() {
+		return counters()[0];
+	}
+
+	/**
+	 * Returns the number of lookups that did not find their key.
+	 *
+	 * Runtime: O(s)
+	 * (where s is the number of segments)
+	 *
+	 * @return The number of misses.
+	 */
+	public long misses() {
+		return counters()[1];
+	}
+
+	/**
+	 * Returns the number of entries evicted to make room for others.
+	 *
+	 * Runtime: O(s)
+	 * (where s is the number of segments)
+	 *
+	 * @return The number of evictions.
+	 */
+	public long evictions() {
+		return counters()[2];
+	}
+
+	/**
+	 * Returns the number of entries the TINY_LFU policy dropped when
+	 * leaving the window, instead of evicting an entry used more often.
+	 *
+	 * Runtime: O(s)
+	 * (where s is the number of segments)
+	 *
+	 * @return The number of rejections.
+	 */
+	public long rejections() {
+		return counters()[3];
+	}
+
+	/**
+	 * Generates a string representation of the counters of the cache.
+	 *
+	 * Runtime: O(s)
+	 * (where s is the number of segments)
+	 *
+	 * @return String representation of the counters.
+	 */
+	public String toString() {
+		long[] counters = counters();
+		long gets = counters[0] + counters[1];
+		StringBuilder sb = new StringBuilder();
+		sb.append("Entries: ").append(size());
+		sb.append(", Weight: ").append(weight());
+		sb.append(", Hits: ").append(counters[0]);
+		sb.append(", Misses: ").append(counters[1]);
+		sb.append(", Hit Rate: ").append(String.format("%.2f%%",
+				gets == 0 ? 0 : 100.0 * counters[0] / gets));
+		sb.append(", Evictions: ").append(counters[2]);
+		sb.append(", Rejections: ").append(counters[3]);
+		return sb.toString();
+	}
+
+	/**
+	 * Adds up the counters of all segments.
+	 *
+	 * Runtime: O(s)
+	 * (where s is the number of segments)
+	 *
+	 * @return The hits, misses, evictions and rejections.
+	 */
+	private long[] counters() {
+		long[] counters = new long[4];
+		for (Segment<K, V> segment : segments) {
+			segment.lock.lock();
+			try {
+				counters[0] += segment.hits;
+				counters[1] += segment.misses;
+				counters[2] += segment.evictions;
+				counters[3] += segment.rejections;
+			} finally {
+				segment.lock.unlock();
+			}
+		}
+		return counters;
+	}
+
+	/**
+	 * Moves entries from the end of the window into the main part
+	 * while the window is over its budget, then evicts entries until
+	 * the segment is within its budget. Under TINY_LFU the entry that
+	 * most recently left the window is evicted instead of the least
+	 * recently used entry of the main part if it has been used no more
+	 * often. The caller holds the lock of the segment.
+	 *
+	 * Runtime: O(1)
+	 * (amortized, each entry is moved and evicted at most once)
+	 *
+	 * @param segment The segment.
+	 */
+	private void evict(final Segment<K, V> segment) {
+		Node<K, V> candidate = null;
+		while (segment.window_weight > segment.window_budget) {
+			candidate = segment.window.previous;
+			unlink(candidate);
+			candidate.in_window = false;
+			segment.window_weight -= candidate.weight;
+			linkFirst(segment.main, candidate);
+		}
+		// The window is within its budget, so the main part is not empty.
+		while (segment.weight > segment.budget) {
+			Node<K, V> victim = segment.main.previous;
+			if (segment.sketch != null && candidate != null && candidate != victim
+					&& segment.sketch.frequency(candidate.hash)
+							<= segment.sketch.frequency(victim.hash)) {
+				remove(segment, candidate);
+				candidate = null;
+				segment.rejections++;
+			} else {
+				remove(segment, victim);
+				if (victim == candidate) {
+					candidate = null;
+				}
+				segment.evictions++;
+			}
+		}
+	}
+
+	/**
+	 * Takes an entry out of the index and its recency list. The
+	 * caller holds the lock of the segment.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param segment The segment of the entry.
+	 * @param node The entry.
+	 */
+	private void remove(final Segment<K, V> segment, final Node<K, V> node) {
+		segment.index.remove(node.key);
+		unlink(node);
+		segment.weight -= node.weight;
+		if (node.in_window) {
+			segment.window_weight -= node.weight;
+		}
+	}
+
+	/**
+	 * Links an entry in at the front of a recency list.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param head The head of the list.
+	 * @param node The entry, not in a list.
+	 */
+	private void linkFirst(final Node<K, V> head, final Node<K, V> node) {
+		node.previous = head;
+		node.next = head.next;
+		node.next.previous = node;
+		head.next = node;
+	}
+
+	/**
+	 * Takes an entry out of its recency list.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param node The entry, in a list.
+	 */
+	private void unlink(final Node<K, V> node) {
+		node.previous.next = node.next;
+		node.next.previous = node.previous;
+		node.previous = null;
+		node.next = null;
+	}
+
+	/**
+	 * Picks the segment of a key from the top bits of its hash. The
+	 * segments use the low bits to pick a slot.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param hash The hash of the key.
+	 * @return The segment.
+	 */
+	private Segment<K, V> segment(final int hash) {
+		return segments.get(shift == 32 ? 0 : hash >>> shift);
+	}
+}
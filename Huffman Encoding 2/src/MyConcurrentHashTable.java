@@ -0,0 +1,355 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hash table that can be shared by several threads, for example to
+ * count the words of several files at once. The table is split into
+ * segments, each a MyHashTable guarded by its own lock, and every key
+ * belongs to the segment picked by the top bits of its hash, as given
+ * by the HashStrategy of the table. Threads working on keys in
+ * different segments never wait for each other.
+ *
+ * @param <K> Key type.
+ * @param <V> Value type.
+ */
+public class MyConcurrentHashTable<K, V> implements HashTableStats.Source {
+
+	/**
+	 * Combines the value already in the table with a new one.
+	 *
+	 * @param <V> Value type.
+	 */
+	public interface Merger<V> {
+
+		/**
+		 * Combines two values.
+		 *
+		 * @param old_value The value in the table.
+		 * @param value The value being merged in.
+		 * @return The value to store.
+		 */
+		V merge(V old_value, V value);
+	}
+
+	/**
+	 * Merger adding counts, so merge(key, 1, SUM) increments a count.
+	 */
+	public static final Merger<Integer> SUM = new Merger<Integer>() {
+		public Integer merge(final Integer old_value, final Integer value) {
+			return old_value + value;
+		}
+	};
+
+	/**
+	 * Default number of segments.
+	 */
+	public static final int DEFAULT_SEGMENTS = 64;
+
+	/**
+	 * The segments, each holding the keys with the same top hash bits.
+	 */
+	private final ArrayList<MyHashTable<K, V>> segments;
+
+	/**
+	 * The lock of each segment.
+	 */
+	private final ReentrantLock[] locks;
+
+	/**
+	 * Hashes the keys, both to pick a segment and within the segment.
+	 */
+	private final HashStrategy<? super K> strategy;
+
+	/**
+	 * Number of hash bits not used to pick a segment.
+	 */
+	private final int shift;
+
+	/**
+	 * Creates a new hash table with given capacity and the default
+	 * number of segments.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the given initial capacity)
+	 *
+	 * @param the_capacity The initial capacity of the hash table.
+	 */
+	public MyConcurrentHashTable(final int the_capacity) {
+		this(the_capacity, DEFAULT_SEGMENTS);
+	}
+
+	/**
+	 * Creates a new hash table with given capacity and number of segments.
+	 * More segments let more threads update the table at once.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the given initial capacity)
+	 *
+	 * @param the_capacity The initial capacity of the hash table.
+	 * @param the_segments The number of segments, rounded up to a power of two.
+	 */
+	public MyConcurrentHashTable(final int the_capacity, final int the_segments) {
+		this(the_capacity, the_segments, HashStrategy.GOLDEN);
+	}
+
+	/**
+	 * Creates a new hash table with given capacity, number of segments
+	 * and hash strategy.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the given initial capacity)
+	 *
+	 * @param the_capacity The initial capacity of the hash table.
+	 * @param the_segments The number of segments, rounded up to a power of two.
+	 * @param the_strategy Hashes the keys.
+	 */
+	public MyConcurrentHashTable(final int the_capacity, final int the_segments,
+			final HashStrategy<? super K> the_strategy) {
+		strategy = the_strategy;
+		int bits = 0;
+		while (1 << bits < the_segments) {
+			bits++;
+		}
+		shift = 32 - bits;
+		segments = new ArrayList<MyHashTable<K, V>>(1 << bits);
+		locks = new ReentrantLock[1 << bits];
+		for (int i = 0; i < locks.length; i++) {
+			segments.add(new MyHashTable<K, V>(the_capacity >> bits, strategy));
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * Puts a new key value pair in the hash table, replacing the
+	 * value if the key is already in it.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param key The key for the new entry.
+	 * @param value The value for the new entry.
+	 */
+	public void put(final K key, final V value) {
+		int segment = segment(key);
+		locks[segment].lock();
+		try {
+			segments.get(segment).put(key, value);
+		} finally {
+			locks[segment].unlock();
+		}
+	}
+
+	/**
+	 * Returns the value associated with the given key.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param key The key to look up.
+	 * @return The value associated with the key, or null if there is none.
+	 */
+	public V get(final K key) {
+		int segment = segment(key);
+		locks[segment].lock();
+		try {
+			return segments.get(segment).get(key);
+		} finally {
+			locks[segment].unlock();
+		}
+	}
+
+	/**
+	 * Finds whether or not the given key is in the hash table or not.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param key Key to try to find.
+	 * @return True if the map contains the given key, false otherwise.
+	 */
+	public boolean containsKey(final K key) {
+		int segment = segment(key);
+		locks[segment].lock();
+		try {
+			return segments.get(segment).containsKey(key);
+		} finally {
+			locks[segment].unlock();
+		}
+	}
+
+	/**
+	 * Atomically stores the given value if the key is not in the
+	 * table, or combines it with the value already there.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param key The key to merge into.
+	 * @param value The value to merge.
+	 * @param merger Combines the old value with the new one.
+	 * @return The value now stored for the key.
+	 */
+	public V merge(final K key, final V value, final Merger<V> merger) {
+		int segment = segment(key);
+		locks[segment].lock();
+		try {
+			MyHashTable<K, V> table = segments.get(segment);
+			V old_value = table.get(key);
+			V new_value = old_value == null ? value : merger.merge(old_value, value);
+			table.put(key, new_value);
+			return new_value;
+		} finally {
+			locks[segment].unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of key value pairs.
+	 *
+	 * Runtime: O(s)
+	 * (where s is the number of segments)
+	 *
+	 * @return The number of key value pairs.
+	 */
+	public int size() {
+		lockAll();
+		try {
+			int size = 0;
+			for (int i = 0; i < locks.length; i++) {
+				size += segments.get(i).size();
+			}
+			return size;
+		} finally {
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Passes every entry to the visitor. All segments are locked during
+	 * the walk, so the visitor sees one moment of the table and must not
+	 * wait for other threads using it.
+	 *
+	 * Runtime: O(n)
+	 *
+	 * @param visitor Receives the entries.
+	 */
+	public void forEach(final MyHashTable.Visitor<? super K, ? super V> visitor) {
+		lockAll();
+		try {
+			for (int i = 0; i < locks.length; i++) {
+				segments.get(i).forEach(visitor);
+			}
+		} finally {
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Constructs a set of all keys in the hash table.
+	 *
+	 * Runtime: O(n)
+	 *
+	 * @return Set of all keys.
+	 */
+	public HashSet<K> keySet() {
+		lockAll();
+		try {
+			HashSet<K> set = new HashSet<K>();
+			for (int i = 0; i < locks.length; i++) {
+				set.addAll(segments.get(i).keySet());
+			}
+			return set;
+		} finally {
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Takes a snapshot of the counters of all segments together. All
+	 * segments are locked while their counters are read.
+	 *
+	 * Runtime: O(s)
+	 * (where s is the number of segments)
+	 *
+	 * @return The snapshot.
+	 */
+	public HashTableStats snapshot() {
+		lockAll();
+		try {
+			HashTableStats stats = segments.get(0).snapshot();
+			for (int i = 1; i < locks.length; i++) {
+				stats = stats.plus(segments.get(i).snapshot());
+			}
+			return stats;
+		} finally {
+			unlockAll();
+		}
+	}
+
+	/**
+	 * Computes stats about the whole hash table and prints them to the
+	 * screen. All segments are locked while the stats are computed, so
+	 * they describe one moment even while other threads are writing.
+	 *
+	 * Runtime: O(n)
+	 */
+	public void stats() {
+		String report;
+		lockAll();
+		try {
+			int entries = 0;
+			int capacity = 0;
+			ArrayList<Integer> probe_lengths = new ArrayList<Integer>();
+			for (int i = 0; i < locks.length; i++) {
+				MyHashTable<K, V> table = segments.get(i);
+				entries += table.size();
+				capacity += table.capacity();
+				ArrayList<Integer> lengths = table.probeLengths();
+				for (int j = 0; j < lengths.size(); j++) {
+					if (j == probe_lengths.size()) {
+						probe_lengths.add(0);
+					}
+					probe_lengths.set(j, probe_lengths.get(j) + lengths.get(j));
+				}
+			}
+			report = MyHashTable.report(entries, capacity, probe_lengths) + "\n" + snapshot();
+		} finally {
+			unlockAll();
+		}
+		System.out.println(report);
+	}
+
+	/**
+	 * Locks every segment, always in the same order.
+	 *
+	 * Runtime: O(s)
+	 * (where s is the number of segments)
+	 */
+	private void lockAll() {
+		for (int i = 0; i < locks.length; i++) {
+			locks[i].lock();
+		}
+	}
+
+	/**
+	 * Unlocks every segment.
+	 *
+	 * Runtime: O(s)
+	 * (where s is the number of segments)
+	 */
+	private void unlockAll() {
+		for (int i = locks.length - 1; i >= 0; i--) {
+			locks[i].unlock();
+		}
+	}
+
+	/**
+	 * Picks the segment of a key from the top bits of its hash. The
+	 * segments use the low bits to pick a slot.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param key The key.
+	 * @return The index of the segment.
+	 */
+	private int segment(final K key) {
+		return shift == 32 ? 0 : strategy.hash(key) >>> shift;
+	}
+}
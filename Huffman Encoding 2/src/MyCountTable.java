@@ -0,0 +1,247 @@
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+
+/**
+ * Hash table counting how often each key occurs. Counts are kept in
+ * a primitive int array and updated in place, so counting a key takes
+ * a single probe and never boxes an Integer or allocates an entry.
+ *
+ * Shares its Robin Hood slots with the MyHashTable class through the
+ * RobinHoodTable class, takes the same hash strategies, and can be
+ * walked in place with a Cursor in the same way.
+ *
+ * @param <K> Key type.
+ */
+public class MyCountTable<K> extends RobinHoodTable<K> {
+
+	/**
+	 * The count in each slot.
+	 */
+	private int[] counts;
+
+	/**
+	 * Walks the keys and counts of the table in slot order, one at
+	 * a time. Call next before reading the first entry.
+	 */
+	public class Cursor {
+
+		/**
+		 * The current slot.
+		 */
+		private int slot;
+
+		/**
+		 * The value of modifications when the walk started.
+		 */
+		private final int expected;
+
+		/**
+		 * Creates a new cursor before the first entry.
+		 *
+		 * Runtime: O(1)
+		 */
+		private Cursor() {
+			slot = -1;
+			expected = modifications;
+		}
+
+		/**
+		 * Moves to the next entry.
+		 *
+		 * Runtime: O(1)
+		 * (amortized over the whole walk)
+		 *
+		 * @return True if there is another entry, false at the end.
+		 */
+		public boolean next() {
+			if (modifications != expected) {
+				throw new ConcurrentModificationException();
+			}
+			do {
+				slot++;
+			} while (slot < capacity && keys[slot] == null);
+			return slot < capacity;
+		}
+
+		/**
+		 * Returns the key of the current entry.
+		 *
+		 * Runtime: O(1)
+		 *
+		 * @return The key.
+		 */
+		@SuppressWarnings("unchecked")
+		public K key() {
+			return (K) keys[slot];
+		}
+
+		/**
+		 * Returns the count of the current entry.
+		 *
+		 * Runtime: O(1)
+		 *
+		 * @return The count.
+		 */
+		public int count() {
+			return counts[slot];
+		}
+	}
+
+	/**
+	 * Creates a new count table with given capacity.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the given initial capacity)
+	 *
+	 * @param the_capacity The initial capacity of the table.
+	 */
+	public MyCountTable(final int the_capacity) {
+		this(the_capacity, HashStrategy.GOLDEN);
+	}
+
+	/**
+	 * Creates a new count table with given capacity and hash strategy.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the given initial capacity)
+	 *
+	 * @param the_capacity The initial capacity of the table.
+	 * @param the_strategy Hashes the keys.
+	 */
+	public MyCountTable(final int the_capacity, final HashStrategy<? super K> the_strategy) {
+		super(the_capacity, the_strategy);
+		counts = new int[capacity];
+	}
+
+	/**
+	 * Adds one to the count of the given key.
+	 *
+	 * Runtime: O(1)
+	 * (amortized over growing the table)
+	 *
+	 * @param key The key to count.
+	 * @return The new count of the key.
+	 */
+	public int increment(final K key) {
+		return add(key, 1);
+	}
+
+	/**
+	 * Adds to the count of the given key. Keys start with a count of 0.
+	 *
+	 * Runtime: O(1)
+	 * (amortized over growing the table)
+	 *
+	 * @param key The key to count.
+	 * @param amount The amount to add.
+	 * @return The new count of the key.
+	 */
+	public int add(final K key, final int amount) {
+		int hash = hash(key);
+		int slot = find(key, hash);
+		if (slot >= 0) {
+			counts[slot] += amount;
+			return counts[slot];
+		}
+		slot = insert(key, hash);
+		counts[slot] = amount;
+		return amount;
+	}
+
+	/**
+	 * Returns the count of the given key.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param key The key to look up.
+	 * @return The count of the key, 0 if it has not been counted.
+	 */
+	public int get(final K key) {
+		int slot = find(key, hash(key));
+		return slot < 0 ? 0 : counts[slot];
+	}
+
+	/**
+	 * Finds whether or not the given key has been counted.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param key Key to try to find.
+	 * @return True if the table contains the given key, false otherwise.
+	 */
+	public boolean containsKey(final K key) {
+		return find(key, hash(key)) >= 0;
+	}
+
+	/**
+	 * Returns the number of keys.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @return The number of keys.
+	 */
+	public int size() {
+		return entries;
+	}
+
+	/**
+	 * Creates a cursor for walking the keys and counts.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @return A cursor before the first entry.
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Constructs a set of all keys in the table.
+	 *
+	 * Runtime: O(n)
+	 *
+	 * @return Set of all keys.
+	 */
+	@SuppressWarnings("unchecked")
+	public HashSet<K> keySet() {
+		HashSet<K> set = new HashSet<K>(2 * entries);
+		for (int i = 0; i < capacity; i++) {
+			if (keys[i] != null) {
+				set.add((K) keys[i]);
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * Moves the count of an entry from one slot to another.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param from The slot the entry was in.
+	 * @param to The slot the entry is now in.
+	 */
+	void moveValue(final int from, final int to) {
+		counts[to] = counts[from];
+	}
+
+	/**
+	 * Moves every entry into a table with the given number of slots.
+	 *
+	 * Runtime: O(n)
+	 *
+	 * @param new_capacity The new number of slots, a power of two.
+	 */
+	void resize(final int new_capacity) {
+		Object[] old_keys = keys;
+		int[] old_counts = counts;
+		int[] old_hashes = hashes;
+		allocate(new_capacity);
+		counts = new int[capacity];
+		for (int i = 0; i < old_keys.length; i++) {
+			if (old_keys[i] != null) {
+				counts[place(old_keys[i], old_hashes[i])] = old_counts[i];
+			}
+		}
+	}
+}
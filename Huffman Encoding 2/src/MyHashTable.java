@@ -1,199 +1,513 @@
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * Class for a hash table.
- * This is used as a frequency map in the CodingTree class.
+ * This holds the codes map of the CodingTree class, each segment of
+ * MyConcurrentHashTable and the index of MyCache.
+ *
+ * Entries are stored with open addressing and Robin Hood linear
+ * probing, in the slots of the RobinHoodTable class, which it shares
+ * with the MyCountTable class.
+ *
+ * Keys are hashed by a HashStrategy, HashStrategy.GOLDEN unless
+ * another one is given.
+ *
+ * The table counts its lookups, puts, probes and resizes as it goes,
+ * see the snapshot method.
+ *
+ * Entries can be walked in place with forEach, a Cursor or an
+ * Iterator over the keys, without copying the table. Adding or
+ * removing a key while walking may move other entries, so it stops
+ * the walk with a ConcurrentModificationException; replacing a value
+ * does not.
  *
  * @param <K> Key type.
  * @param <V> Value type.
  */
-public class MyHashTable<K, V> {
-	
+public class MyHashTable<K, V> extends RobinHoodTable<K>
+		implements HashTableStats.Source, Iterable<K> {
+
+	/**
+	 * Receives each entry of a table in turn.
+	 *
+	 * @param <K> Key type.
+	 * @param <V> Value type.
+	 */
+	public interface Visitor<K, V> {
+
+		/**
+		 * Receives one entry.
+		 *
+		 * @param key The key of the entry.
+		 * @param value The value of the entry.
+		 */
+		void visit(K key, V value);
+	}
+
+	/**
+	 * Number of entries from which getAll overlaps the lookups of a batch.
+	 */
+	public static final int BATCH_ENTRIES = 1 << 18;
+
 	/**
-	 * Number of buckets.
+	 * The value in each slot.
 	 */
-	private int capacity;
-	
+	private Object[] values;
+
 	/**
-	 * Half of the capacity. Kept so it need not be recalculated.
+	 * Number of lookups by get or containsKey.
 	 */
-	private int half_cap;
-	
+	private long gets;
+
 	/**
-	 * List of buckets to put key value pairs in.
+	 * Number of lookups that found their key.
 	 */
-	private ArrayList<Bucket> buckets;
-	
+	private long hits;
+
 	/**
-	 * Buckets with stuff in them.
+	 * Number of puts and removes.
 	 */
-	private int entries;
-	
+	private long puts;
+
 	/**
-	 * Inner class for elements in the list of buckets.
-	 * Primarily used to hold key value pairs.
-	 * Uses chaining for collisions.
+	 * Number of times the table has grown.
 	 */
-	private class Bucket {
-		K key;
-		V value;
-		Bucket next;
-		
+	private int resizes;
+
+	/**
+	 * Walks the entries of the table in slot order, one at a time.
+	 * Call next before reading the first entry.
+	 */
+	public class Cursor {
+
+		/**
+		 * The current slot.
+		 */
+		private int slot;
+
 		/**
-		 * Creates a new bucket with given key and value pair.
-		 * 
+		 * The value of modifications when the walk started.
+		 */
+		private final int expected;
+
+		/**
+		 * Creates a new cursor before the first entry.
+		 *
 		 * Runtime: O(1)
-		 * 
-		 * @param key The key
-		 * @param val The value
 		 */
-		public Bucket(final K key, final V val) {
-			this.key = key;
-			value = val;
-			next = null;
+		private Cursor() {
+			slot = -1;
+			expected = modifications;
 		}
-		
+
 		/**
-		 * Creates a string representation of the bucket.
-		 * 
-		 * Runtime: O(n)
-		 * (where n is the number of entries in the bucket)
-		 * 
-		 * @return String representation of the bucket.
+		 * Moves to the next entry.
+		 *
+		 * Runtime: O(1)
+		 * (amortized over the whole walk)
+		 *
+		 * @return True if there is another entry, false at the end.
 		 */
-		public String toString() {
-			Bucket current = next;
-			StringBuilder sb = new StringBuilder();
-			sb.append(key + " = " + value + "\n");
-			while (current != null) {
-				sb.append(current.key + " = " + current.value + "\n");
-				current = current.next;
+		public boolean next() {
+			if (modifications != expected) {
+				throw new ConcurrentModificationException();
 			}
-			return sb.toString();
+			do {
+				slot++;
+			} while (slot < capacity && keys[slot] == null);
+			return slot < capacity;
+		}
+
+		/**
+		 * Returns the key of the current entry.
+		 *
+		 * Runtime: O(1)
+		 *
+		 * @return The key.
+		 */
+		@SuppressWarnings("unchecked")
+		public K key() {
+			return (K) keys[slot];
+		}
+
+		/**
+		 * Returns the value of the current entry.
+		 *
+		 * Runtime: O(1)
+		 *
+		 * @return The value.
+		 */
+		@SuppressWarnings("unchecked")
+		public V value() {
+			return (V) values[slot];
+		}
+
+		/**
+		 * Replaces the value of the current entry.
+		 *
+		 * Runtime: O(1)
+		 *
+		 * @param value The new value.
+		 */
+		public void setValue(final V value) {
+			values[slot] = value;
 		}
 	}
-	
+
 	/**
 	 * Creates a new hash table with given capacity.
-	 * 
+	 *
 	 * Runtime: O(n)
 	 * (where n is the given initial capacity)
-	 * 
-	 * @param the_capacity The capacity of the hash table.
+	 *
+	 * @param the_capacity The initial capacity of the hash table.
 	 */
 	public MyHashTable(final int the_capacity) {
-		this.capacity = the_capacity;
-		this.half_cap = the_capacity / 2;
-		buckets = new ArrayList<Bucket>(capacity);
-		for (int i = 0; i < capacity; i++) {
-			buckets.add(null);
-		}
-		entries = 0;
+		this(the_capacity, HashStrategy.GOLDEN);
 	}
-	
+
 	/**
-	 * Puts a new key value pair in the hash table.
-	 * 
+	 * Creates a new hash table with given capacity and hash strategy.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the given initial capacity)
+	 *
+	 * @param the_capacity The initial capacity of the hash table.
+	 * @param the_strategy Hashes the keys.
+	 */
+	public MyHashTable(final int the_capacity, final HashStrategy<? super K> the_strategy) {
+		super(the_capacity, the_strategy);
+		values = new Object[capacity];
+	}
+
+	/**
+	 * Puts a new key value pair in the hash table, replacing the
+	 * value if the key is already in it.
+	 *
 	 * Runtime: O(1)
-	 * 
+	 * (amortized over growing the table)
+	 *
 	 * @param key The key for the new entry.
 	 * @param value The value for the new entry.
 	 */
 	public void put(final K key, final V value) {
-		boolean placed = false;
+		puts++;
 		int hash = hash(key);
-		if (buckets.get(hash) == null) {
-			buckets.set(hash, new Bucket(key, value));
-			entries++;
-		} else {
-			Bucket current = buckets.get(hash);
-			if (current.key.equals(key)) {
-				buckets.set(hash, new Bucket(key, value));
-				if (current.next != null) {
-					buckets.get(hash).next = current.next;
-				}
-			}
-			Bucket previous = current;
-			current = current.next;
-			while (current != null) {
-				if (current.key.equals(key)) {
-					placed = true;
-					previous.next = new Bucket(key, value);
-					if (current.next != null) {
-						previous.next.next = current.next;
-					}
-					break;
-				}
-				current = current.next;
-				previous = previous.next;
-			}
-			if (!placed) {
-				previous.next = new Bucket(key, value);
-				entries++;
-			}
-			
-			
+		int slot = find(key, hash);
+		if (slot >= 0) {
+			values[slot] = value;
+			return;
 		}
+		slot = insert(key, hash);
+		values[slot] = value;
 	}
-	
+
 	/**
 	 * Returns the value associated with the given key.
-	 * 
+	 *
 	 * Runtime: O(1)
-	 * 
+	 *
 	 * @param key The key to look up.
-	 * @return The value associated with the key.
+	 * @return The value associated with the key, or null if there is none.
 	 */
+	@SuppressWarnings("unchecked")
 	public V get(final K key) {
-		int hash = hash(key);
-		Bucket current;
-		if (buckets.get(hash) == null) {
+		int slot = lookup(key);
+		return slot < 0 ? null : (V) values[slot];
+	}
+
+	/**
+	 * Looks up a batch of keys. All of the keys are hashed and their
+	 * home slots read first, then each one is compared and probed, so
+	 * on a table too large for the processor caches the misses of the
+	 * whole batch overlap instead of being waited for one at a time.
+	 * Tables with fewer than BATCH_ENTRIES entries are searched one key
+	 * at a time, as the extra pass costs more than it saves.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the number of keys)
+	 *
+	 * @param batch The keys to look up.
+	 * @param count The number of keys in the batch.
+	 * @param out Receives the value of each key, or null if it has none.
+	 */
+	@SuppressWarnings("unchecked")
+	public void getAll(final K[] batch, final int count, final V[] out) {
+		if (entries < BATCH_ENTRIES) {
+			for (int i = 0; i < count; i++) {
+				out[i] = get(batch[i]);
+			}
+			return;
+		}
+		int[] batch_hashes = new int[count];
+		Object[] home_keys = new Object[count];
+		int mask = capacity - 1;
+		for (int i = 0; i < count; i++) {
+			int hash = hash(batch[i]);
+			int slot = hash & mask;
+			batch_hashes[i] = hash;
+			home_keys[i] = hashes[slot] == hash ? keys[slot] : null;
+		}
+		gets += count;
+		for (int i = 0; i < count; i++) {
+			int slot;
+			if (home_keys[i] != null && home_keys[i].equals(batch[i])) {
+				slot = batch_hashes[i] & mask;
+				probes++;
+			} else {
+				slot = find(batch[i], batch_hashes[i]);
+			}
+			if (slot >= 0) {
+				hits++;
+				out[i] = (V) values[slot];
+			} else {
+				out[i] = null;
+			}
+		}
+	}
+
+	/**
+	 * Finds whether or not the given key is in the hash table or not.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param key Key to try to find.
+	 * @return True if the map contains the given key, false otherwise.
+	 */
+	public boolean containsKey(final K key) {
+		return lookup(key) >= 0;
+	}
+
+	/**
+	 * Removes the given key and its value from the hash table. The
+	 * entries after it that are not in their home slot move back one
+	 * slot each, so no probe sequence is left with a gap.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param key The key to remove.
+	 * @return The value that was associated with the key, or null if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(final K key) {
+		puts++;
+		int slot = find(key, hash(key));
+		if (slot < 0) {
 			return null;
-		} else {
-			current = buckets.get(hash);
-			while (current.next != null && !(current.key.equals(key))) {
-				current = current.next;
+		}
+		V value = (V) values[slot];
+		values[delete(slot)] = null;
+		return value;
+	}
+
+	/**
+	 * Takes a snapshot of the counters kept by the table.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @return The snapshot.
+	 */
+	public HashTableStats snapshot() {
+		return new HashTableStats(entries, capacity, gets, hits, gets - hits, puts, probes,
+				max_probe, resizes);
+	}
+
+	/**
+	 * Passes every entry to the visitor, in slot order.
+	 *
+	 * Runtime: O(n)
+	 *
+	 * @param visitor Receives the entries.
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEach(final Visitor<? super K, ? super V> visitor) {
+		int expected = modifications;
+		for (int i = 0; i < capacity; i++) {
+			if (keys[i] != null) {
+				visitor.visit((K) keys[i], (V) values[i]);
+				if (modifications != expected) {
+					throw new ConcurrentModificationException();
+				}
 			}
 		}
-		return current.value;
 	}
-	
+
+	/**
+	 * Creates a cursor for walking the entries.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @return A cursor before the first entry.
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Creates an iterator over the keys, reading them straight from
+	 * the table as it goes.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @return The iterator.
+	 */
+	public Iterator<K> iterator() {
+		return new Iterator<K>() {
+			private final Cursor cursor = new Cursor();
+			private boolean ready = false;
+			private boolean more = false;
+
+			public boolean hasNext() {
+				if (!ready) {
+					more = cursor.next();
+					ready = true;
+				}
+				return more;
+			}
+
+			public K next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				ready = false;
+				return cursor.key();
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Constructs a set of all keys in the hash table.
+	 *
+	 * Runtime: O(n)
+	 *
+	 * @return Set of all keys.
+	 */
+	@SuppressWarnings("unchecked")
+	public HashSet<K> keySet() {
+		HashSet<K> set = new HashSet<K>(2 * entries);
+		for (int i = 0; i < capacity; i++) {
+			if (keys[i] != null) {
+				set.add((K) keys[i]);
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * Finds the slot holding the given key for get or containsKey.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param key The key to find.
+	 * @return The slot of the key, or -1 if it is not in the table.
+	 */
+	private int lookup(final K key) {
+		gets++;
+		int slot = find(key, hash(key));
+		if (slot >= 0) {
+			hits++;
+		}
+		return slot;
+	}
+
+	/**
+	 * Moves the value of an entry from one slot to another.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param from The slot the entry was in.
+	 * @param to The slot the entry is now in.
+	 */
+	void moveValue(final int from, final int to) {
+		values[to] = values[from];
+	}
+
 	/**
-	 * Hashes the given key.
-	 * 
-	 * Runtime: O(1);
-	 * 
-	 * @param key The key to hash.
-	 * @return The integer hash of the key.
+	 * Moves every entry into a table with the given number of slots.
+	 *
+	 * Runtime: O(n)
+	 *
+	 * @param new_capacity The new number of slots, a power of two.
 	 */
-	private int hash(K key) {
-		return key.hashCode() % half_cap + half_cap;
+	void resize(final int new_capacity) {
+		Object[] old_keys = keys;
+		Object[] old_values = values;
+		int[] old_hashes = hashes;
+		allocate(new_capacity);
+		values = new Object[capacity];
+		resizes++;
+		for (int i = 0; i < old_keys.length; i++) {
+			if (old_keys[i] != null) {
+				values[place(old_keys[i], old_hashes[i])] = old_values[i];
+			}
+		}
 	}
-	
+
 	/**
 	 * Generates a string representation of the hash table.
-	 * 
+	 *
 	 * @return String representation of the hash table.
 	 */
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
-		for (int i = 0; i < buckets.size(); i++) {
-			if (buckets.get(i) == null) {
-				continue;
-			} else {
-				sb.append(buckets.get(i).toString());
-			}
+		try {
+			print(sb);
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // a StringBuilder never throws
 		}
 		return sb.toString();
 	}
-	
+
+	/**
+	 * Writes every entry as "key = value" on its own line, one entry
+	 * at a time, so a large table can go straight to a file.
+	 *
+	 * Runtime: O(n)
+	 *
+	 * @param out Where to write the entries.
+	 * @throws IOException If the entries cannot be written.
+	 */
+	public void print(final Appendable out) throws IOException {
+		for (int i = 0; i < capacity; i++) {
+			if (keys[i] != null) {
+				out.append(String.valueOf(keys[i])).append(" = ")
+						.append(String.valueOf(values[i])).append('\n');
+			}
+		}
+	}
+
 	/**
 	 * Computes stats about the hash table and prints them to the screen.
-	 * 
+	 *
 	 * Runtime: O(n)
 	 */
 	public void stats() {
+		System.out.println(report(entries, capacity, probeLengths()));
+		System.out.println(snapshot());
+	}
+
+	/**
+	 * Formats stats about a hash table.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the histogram)
+	 *
+	 * @param entries Number of key value pairs.
+	 * @param capacity Number of slots.
+	 * @param probe_lengths Histogram of the probe lengths.
+	 * @return The stats.
+	 */
+	static String report(final int entries, final int capacity,
+			final ArrayList<Integer> probe_lengths) {
 		StringBuilder sb = new StringBuilder();
 		sb.append("Hash Table Stats\n================\n");
 		sb.append("Number of Entries: ");
@@ -202,125 +516,79 @@ public class MyHashTable<K, V> {
 		sb.append("Number of Buckets: ");
 		sb.append(capacity);
 		sb.append('\n');
-		ArrayList<Integer> bucket_sizes = bucketSizes();
-		sb.append("Histogram of Bucket Sizes: ");
-		sb.append(bucket_sizes.toString());
+		sb.append("Histogram of Probe Lengths: ");
+		sb.append(probe_lengths.toString());
 		sb.append('\n');
 		sb.append("Fill Percentage: ");
-		sb.append(100 * ((double) bucketsFilled() / (double) capacity));
+		sb.append(100 * ((double) entries / (double) capacity));
 		sb.append("%\n");
-		sb.append("Average Non-Empty Bucket Size: ");
-		sb.append(average(bucket_sizes));
+		sb.append("Average Probe Length of Current Entries: ");
+		sb.append(average(probe_lengths, entries));
 		sb.append('\n');
-		System.out.println(sb.toString());
-	}
-	
-	/**
-	 * Computes the sizes of the buckets.
-	 * 
-	 * Runtime: O(n)
-	 * 
-	 * @return A list with index associated with bucket sizes
-	 * of that index (ie index 0 would have the number of buckets of size 0).
-	 */
-	private ArrayList<Integer> bucketSizes() {
-		ArrayList<Integer> bucket_sizes = new ArrayList<Integer>();
-		bucket_sizes.add(0);
-		for (int i = 0; i < capacity; i++) {
-			if (buckets.get(i) != null) {
-				Bucket current = buckets.get(i);
-				int number = 1;
-				while (current.next != null) {
-					number++;
-					current = current.next;
-				}
-				while (number >= bucket_sizes.size()) {
-					bucket_sizes.add(0);
-				}
-				bucket_sizes.set(number, bucket_sizes.get(number) + 1);
-			} else {
-				bucket_sizes.set(0, bucket_sizes.get(0) + 1);
-			}
-		}
-		return bucket_sizes;
+		return sb.toString();
 	}
-	
+
 	/**
-	 * Calculates the amount of buckets that actually have stuff in them.
-	 * 
-	 * Runtime: O(n)
-	 * 
-	 * @return The number of buckets filled.
+	 * Returns the number of key value pairs.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @return The number of key value pairs.
 	 */
-	private int bucketsFilled() {
-		int j = 0;
-		for (int i = 0; i < buckets.size(); i++) {
-			if (buckets.get(i) != null) {
-				j++;
-			}
-		}
-		return j;
+	public int size() {
+		return entries;
 	}
-	
+
 	/**
-	 * Calculates the average non-empty bucket size.
-	 * 
-	 * Runtime: O(n);
-	 * (where n is the size of the list)
-	 * 
-	 * @param bucket_sizes Histogram of the bucket sizes.
-	 * @return Average non-empty bucket size.
+	 * Returns the number of slots.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @return The number of slots.
 	 */
-	private double average(final ArrayList<Integer> bucket_sizes) {
-		int total = 0;
-		for (int i = 0; i < bucket_sizes.size(); i++) {
-			total += (i + 1) * bucket_sizes.get(i);
-		}
-		return (double) total / (double) capacity;
+	int capacity() {
+		return capacity;
 	}
-	
+
 	/**
-	 * Finds whether or not the given key is in the hash table or not.
-	 * 
-	 * Runtime: O(1)
-	 * 
-	 * @param key Key to try to find.
-	 * @return True if the map contains the given key, false otherwise.
+	 * Computes the number of slots a lookup of each entry looks at.
+	 *
+	 * Runtime: O(n)
+	 *
+	 * @return A list with index associated with the number of entries
+	 * found after that many slots (ie index 1 would have the number
+	 * of entries in their home slot).
 	 */
-	public boolean containsKey(final K key) {
-		int hash = hash(key);
-		Bucket current = buckets.get(hash);
-		while (current != null) {
-			if (current.key.equals(key)) {
-				return true;
+	ArrayList<Integer> probeLengths() {
+		ArrayList<Integer> probe_lengths = new ArrayList<Integer>();
+		probe_lengths.add(0);
+		for (int i = 0; i < capacity; i++) {
+			if (keys[i] != null) {
+				int number = distance(i) + 1;
+				while (number >= probe_lengths.size()) {
+					probe_lengths.add(0);
+				}
+				probe_lengths.set(number, probe_lengths.get(number) + 1);
 			}
-			current = current.next;
 		}
-		return false;
+		return probe_lengths;
 	}
-	
+
 	/**
-	 * Constructs a set of all keys in the hash table.
-	 * 
-	 * Runtime: O(n)
-	 * 
-	 * @return Set of all keys.
+	 * Calculates the average number of slots looked at to find an entry.
+	 *
+	 * Runtime: O(n);
+	 * (where n is the size of the list)
+	 *
+	 * @param probe_lengths Histogram of the probe lengths.
+	 * @param entries Number of entries in the histogram.
+	 * @return Average probe length, 0 for an empty table.
 	 */
-	public HashSet<K> keySet() {
-		HashSet<K> set = new HashSet<K>();
-		for (int i = 0; i < capacity; i++) {
-			Bucket current = buckets.get(i);
-			while (current != null) {
-				set.add(current.key);
-				current = current.next;
-			}
+	private static double average(final ArrayList<Integer> probe_lengths, final int entries) {
+		long total = 0;
+		for (int i = 0; i < probe_lengths.size(); i++) {
+			total += (long) i * probe_lengths.get(i);
 		}
-		return set;
+		return entries == 0 ? 0 : (double) total / (double) entries;
 	}
-	
-	
-	
-	
-	
-	
 }
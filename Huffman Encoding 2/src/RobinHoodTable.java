@@ -0,0 +1,258 @@
+/**
+ * The slots shared by the MyHashTable and MyCountTable classes: keys
+ * and their spread hashes in open addressing with Robin Hood linear
+ * probing. A key being inserted takes the slot of the first entry
+ * that is closer to its home slot than the key would be, and the
+ * entries from there up to the next empty slot move on by one, which
+ * keeps every probe sequence short. A removed key is filled in by
+ * moving the entries after it back by one. The number of slots is a
+ * power of two and doubles whenever the table gets more than three
+ * quarters full.
+ *
+ * Subclasses keep the value of each slot in their own array, so it
+ * can be a primitive, and move it whenever a key moves.
+ *
+ * @param <K> Key type.
+ */
+abstract class RobinHoodTable<K> {
+
+	/**
+	 * Smallest number of slots.
+	 */
+	private static final int MIN_CAPACITY = 16;
+
+	/**
+	 * Hashes the keys.
+	 */
+	final HashStrategy<? super K> strategy;
+
+	/**
+	 * Number of slots, always a power of two.
+	 */
+	int capacity;
+
+	/**
+	 * The key in each slot, null for empty slots.
+	 */
+	Object[] keys;
+
+	/**
+	 * The spread hash of the key in each slot.
+	 */
+	int[] hashes;
+
+	/**
+	 * Number of keys.
+	 */
+	int entries;
+
+	/**
+	 * Number of keys added or removed, used to stop walks
+	 * that would see entries move.
+	 */
+	int modifications;
+
+	/**
+	 * Number of slots looked at by all finds.
+	 */
+	long probes;
+
+	/**
+	 * Longest probe sequence of any entry since the table last grew.
+	 */
+	int max_probe;
+
+	/**
+	 * Creates a new empty table with at least the given number of slots.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the given initial capacity)
+	 *
+	 * @param the_capacity The initial capacity of the table.
+	 * @param the_strategy Hashes the keys.
+	 */
+	RobinHoodTable(final int the_capacity, final HashStrategy<? super K> the_strategy) {
+		strategy = the_strategy;
+		int slots = MIN_CAPACITY;
+		while (slots < the_capacity) {
+			slots *= 2;
+		}
+		allocate(slots);
+	}
+
+	/**
+	 * Moves the value of an entry from one slot to another. The
+	 * key and hash have already been moved.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param from The slot the entry was in.
+	 * @param to The slot the entry is now in.
+	 */
+	abstract void moveValue(int from, int to);
+
+	/**
+	 * Moves every entry into a table with the given number of slots,
+	 * by calling allocate and then place for each entry.
+	 *
+	 * Runtime: O(n)
+	 *
+	 * @param new_capacity The new number of slots, a power of two.
+	 */
+	abstract void resize(int new_capacity);
+
+	/**
+	 * Finds the slot holding the given key. The search stops at an
+	 * empty slot, or at an entry closer to its home slot than the key
+	 * would be, since Robin Hood insertion would have put the key there.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param key The key to find.
+	 * @param hash The spread hash of the key.
+	 * @return The slot of the key, or -1 if it is not in the table.
+	 */
+	final int find(final Object key, final int hash) {
+		int mask = capacity - 1;
+		int slot = hash & mask;
+		int distance = 0;
+		while (keys[slot] != null && distance <= distance(slot)) {
+			if (hashes[slot] == hash && keys[slot].equals(key)) {
+				probes += distance + 1;
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+			distance++;
+		}
+		probes += distance + 1;
+		return -1;
+	}
+
+	/**
+	 * Adds a key that is not in the table yet, growing the table
+	 * first if it would get more than three quarters full. The caller
+	 * sets the value of the returned slot, in its value array as it is
+	 * after the call, since growing replaces the array.
+	 *
+	 * Runtime: O(1)
+	 * (amortized over growing the table)
+	 *
+	 * @param key The key to add.
+	 * @param hash The spread hash of the key.
+	 * @return The slot of the key.
+	 */
+	final int insert(final Object key, final int hash) {
+		if (4 * (entries + 1) > 3 * capacity) {
+			resize(2 * capacity);
+		}
+		entries++;
+		modifications++;
+		return place(key, hash);
+	}
+
+	/**
+	 * Puts a key in the first slot holding an entry closer to its home
+	 * slot than the key would be, or in the first empty slot, moving
+	 * the entries from there up to the next empty slot on by one.
+	 * The caller sets the value of the returned slot.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param key The key to place.
+	 * @param hash The spread hash of the key.
+	 * @return The slot of the key.
+	 */
+	final int place(final Object key, final int hash) {
+		int mask = capacity - 1;
+		int slot = hash & mask;
+		int distance = 0;
+		while (keys[slot] != null && distance <= distance(slot)) {
+			slot = (slot + 1) & mask;
+			distance++;
+		}
+		int to = slot;
+		while (keys[to] != null) {
+			to = (to + 1) & mask;
+		}
+		while (to != slot) {
+			int from = (to - 1) & mask;
+			keys[to] = keys[from];
+			hashes[to] = hashes[from];
+			moveValue(from, to);
+			max_probe = Math.max(max_probe, distance(to) + 1);
+			to = from;
+		}
+		keys[slot] = key;
+		hashes[slot] = hash;
+		max_probe = Math.max(max_probe, distance + 1);
+		return slot;
+	}
+
+	/**
+	 * Takes the entry out of a slot. The entries after it that are not
+	 * in their home slot move back one slot each, so no probe sequence
+	 * is left with a gap. The caller clears the value of the returned
+	 * slot.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param the_slot The slot of the entry to remove.
+	 * @return The slot left empty.
+	 */
+	final int delete(final int the_slot) {
+		int slot = the_slot;
+		int mask = capacity - 1;
+		int next = (slot + 1) & mask;
+		while (keys[next] != null && distance(next) > 0) {
+			keys[slot] = keys[next];
+			hashes[slot] = hashes[next];
+			moveValue(next, slot);
+			slot = next;
+			next = (next + 1) & mask;
+		}
+		keys[slot] = null;
+		entries--;
+		modifications++;
+		return slot;
+	}
+
+	/**
+	 * Replaces the keys and hashes with empty ones of the given number
+	 * of slots. The caller replaces its values to match.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the new number of slots)
+	 *
+	 * @param new_capacity The new number of slots, a power of two.
+	 */
+	final void allocate(final int new_capacity) {
+		capacity = new_capacity;
+		keys = new Object[capacity];
+		hashes = new int[capacity];
+		max_probe = 0;
+	}
+
+	/**
+	 * Finds how far the entry in a slot is from its home slot.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param slot A slot holding an entry.
+	 * @return The number of slots between the home slot and the slot.
+	 */
+	final int distance(final int slot) {
+		return (slot - hashes[slot]) & (capacity - 1);
+	}
+
+	/**
+	 * Hashes the given key with the strategy of the table.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param key The key to hash.
+	 * @return The integer hash of the key.
+	 */
+	final int hash(final K key) {
+		return strategy.hash(key);
+	}
+}
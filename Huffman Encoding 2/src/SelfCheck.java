@@ -0,0 +1,233 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Runs inputs that have broken the encoder before and throws an
+ * IllegalStateException when one of them goes wrong again.
+ *
+ * Usage: SelfCheck
+ *
+ */
+public class SelfCheck {
+
+	public static void main(String[] args) throws IOException {
+		checkLongWord();
+		checkWideChars();
+		checkLargeCounts();
+		checkCacheBudgets();
+		checkSketchGrowth();
+		checkOtherTable();
+		System.out.println("All checks passed");
+	}
+
+	/**
+	 * Counts texts with a word too long to split, alone and between
+	 * separators, in parallel.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the word)
+	 */
+	private static void checkLongWord() {
+		char[] letters = new char[600000];
+		Arrays.fill(letters, 'a');
+		String word = new String(letters);
+
+		MyCountTable<String> counts = FrequencyCounter.count(word);
+		expect(counts.size() == 1 && counts.get(word) == 1, "one long word counted as "
+				+ counts.size() + " symbols");
+
+		counts = FrequencyCounter.count("x " + word + " y");
+		expect(counts.size() == 4 && counts.get(word) == 1 && counts.get(" ") == 2,
+				"long word between separators counted as " + counts.size() + " symbols");
+
+		CodingTree tree = new CodingTree(word);
+		expect(tree.ids.length == 1, "tree of one long word has " + tree.ids.length
+				+ " symbols");
+	}
+
+	/**
+	 * Builds trees from texts with characters above 0xFF, including
+	 * surrogate pairs, and from every ISO-8859-1 character, and checks
+	 * that every symbol keeps its own id and its UTF-8 bytes.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the texts)
+	 */
+	private static void checkWideChars() {
+		StringBuilder bytes = new StringBuilder();
+		for (char ch = 0; ch <= 0xFF; ch++) {
+			bytes.append(ch);
+		}
+		char[] pairs = new char[600000];
+		for (int i = 0; i < pairs.length; i += 2) {
+			pairs[i] = '\uD83D';
+			pairs[i + 1] = '\uDE00';
+		}
+		String[] texts = {bytes.toString(), "\u0101 \u0001 \u4E2D- x\uD83D\uDE00y\uD83D\uDE00",
+				new String(pairs)};
+		for (String text : texts) {
+			MyCountTable<String> counts = FrequencyCounter.count(text);
+			CodingTree tree = new CodingTree(text);
+			expect(tree.ids.length == counts.size(), "tree of " + text.length()
+					+ " characters has " + tree.ids.length + " of " + counts.size() + " symbols");
+			MyCountTable<String>.Cursor entry = counts.cursor();
+			while (entry.next()) {
+				String key = entry.key();
+				int id = tree.table.find(key, 0, key.length());
+				expect(id >= 0 && tree.table.bytes(id).equals(
+						ByteBuffer.wrap(key.getBytes(SymbolTable.CHARSET))),
+						"symbol " + key + " not kept as its UTF-8 bytes");
+			}
+		}
+		expect(FrequencyCounter.count(texts[2]).get("\uD83D\uDE00") == pairs.length / 2,
+				"surrogate pairs split while counting");
+	}
+
+	/**
+	 * Builds trees from counts past the range of an int, with the
+	 * largest count small enough to pack with an id and too large to.
+	 *
+	 * Runtime: O(1)
+	 */
+	private static void checkLargeCounts() {
+		SymbolTable table = new SymbolTable();
+		int big = table.add("the", 3000000000L);
+		table.add("of", 1000000000L);
+		table.add("a", 1);
+		table.increment(ByteBuffer.wrap("the".getBytes(Tokenizer.CHARSET)), 0, 3);
+		expect(table.count(big) == 3000000001L, "count of 3000000001 read back as "
+				+ table.count(big));
+		CodingTree tree = new CodingTree(table);
+		expect(tree.encoded_bits == 3000000001L + 2 * 1000000000L + 2 * 1,
+				"large counts encode to " + tree.encoded_bits + " bits");
+
+		table = new SymbolTable();
+		table.add("of", 2);
+		big = table.add("the", 1L << 62);
+		table.add("a", 1);
+		tree = new CodingTree(table);
+		expect(tree.code_lengths[big] == 1 && tree.ids[0] == big,
+				"most frequent symbol has a code of " + tree.code_lengths[big] + " bits");
+	}
+
+	/**
+	 * Fills caches with small budgets, which do not divide evenly
+	 * between the default number of segments or are smaller than it,
+	 * and checks that each ends up holding exactly its budget.
+	 *
+	 * Runtime: O(b)
+	 * (where b is the largest budget)
+	 */
+	private static void checkCacheBudgets() {
+		for (int budget : new int[] {1, 10, 100, 1000}) {
+			for (int policy : new int[] {MyCache.LRU, MyCache.TINY_LFU}) {
+				MyCache<Integer, Integer> cache = new MyCache<Integer, Integer>(budget,
+						MyCache.ENTRIES, policy, MyCache.DEFAULT_SEGMENTS, HashStrategy.GOLDEN);
+				for (int i = 0; i < 100 * budget; i++) {
+					cache.put(i, i);
+				}
+				expect(cache.size() == budget, "cache with a budget of " + budget + " holds "
+						+ cache.size() + " entries");
+			}
+		}
+	}
+
+	/**
+	 * Grows a frequency sketch while it holds counts, and checks that
+	 * every estimate was kept, halved.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the number of keys counted)
+	 */
+	private static void checkSketchGrowth() {
+		FrequencySketch sketch = new FrequencySketch(16);
+		int[] before = new int[100];
+		for (int key = 0; key < before.length; key++) {
+			for (int i = 0; i <= key % 8; i++) {
+				sketch.increment(HashStrategy.GOLDEN.hash(key));
+			}
+		}
+		for (int key = 0; key < before.length; key++) {
+			before[key] = sketch.frequency(HashStrategy.GOLDEN.hash(key));
+		}
+		sketch.ensureCapacity(1 << 12);
+		for (int key = 0; key < before.length; key++) {
+			int after = sketch.frequency(HashStrategy.GOLDEN.hash(key));
+			expect(after >= before[key] / 2, "key " + key + " was seen " + before[key]
+					+ " times before the sketch grew and " + after + " times after");
+		}
+	}
+
+	/**
+	 * Compresses part of a text with a table counted from the whole
+	 * text and saved with its code lengths, as -count and -table do,
+	 * and checks that the opened codes are the ones saved and that the
+	 * part decodes back to itself.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the text)
+	 *
+	 * @throws IOException If a temporary file cannot be read or written.
+	 */
+	private static void checkOtherTable() throws IOException {
+		StringBuilder whole = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			whole.append(i % 7 == 0 ? "The cat sat on the mat. " : "A dog, a log; a frog! ");
+		}
+		String part = "mat mat frog. The log sat on a dog!";
+		File text = File.createTempFile("whole", ".txt");
+		File in = File.createTempFile("part", ".txt");
+		File symbols = File.createTempFile("whole", ".sym");
+		File codes = File.createTempFile("whole", ".codes");
+		File out = File.createTempFile("part", ".bin");
+		try {
+			Files.write(text.toPath(), whole.toString().getBytes(Tokenizer.CHARSET));
+			Files.write(in.toPath(), part.getBytes(Tokenizer.CHARSET));
+			SymbolTable table = new SymbolTable();
+			StreamCompressor.countFrequencies(text, false, table);
+			table.save(symbols);
+			CodingTree built = new CodingTree(table);
+			built.save(codes);
+			CodingTree tree = CodingTree.open(SymbolTable.open(symbols), codes);
+			expect(Arrays.equals(tree.code_bits, built.code_bits)
+					&& Arrays.equals(tree.code_lengths, built.code_lengths)
+					&& Arrays.equals(tree.ids, built.ids), "opened codes differ from the saved ones");
+			StreamCompressor.encode(in, tree, out, false);
+
+			ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+			try (FileChannel input = FileChannel.open(out.toPath(), StandardOpenOption.READ)) {
+				BitReader reader = new BitReader(input);
+				CompressedFile header = CompressedFile.read(reader);
+				new HuffmanDecoder(header).decode(reader, header.bits, Channels.newChannel(decoded));
+			}
+			String result = new String(decoded.toByteArray(), Tokenizer.CHARSET);
+			expect(result.equals(part), "part compressed with the table of the whole text"
+					+ " decoded to " + result.length() + " characters");
+		} finally {
+			text.delete();
+			in.delete();
+			symbols.delete();
+			codes.delete();
+			out.delete();
+		}
+	}
+
+	/**
+	 * Runtime: O(1)
+	 *
+	 * @param condition What should hold.
+	 * @param message What went wrong if it does not.
+	 */
+	private static void expect(final boolean condition, final String message) {
+		if (!condition) {
+			throw new IllegalStateException(message);
+		}
+	}
+}
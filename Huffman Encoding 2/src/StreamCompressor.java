@@ -0,0 +1,178 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Two pass compressor for files that are too large to hold in memory.
+ * The first pass counts the frequency of every word and separator,
+ * the second pass encodes the file straight to the output file.
+ * Memory use is bounded by the symbol table, not by the input size.
+ * The file is either read in chunks or memory mapped. Symbols are
+ * looked up by id straight from the input bytes, so neither pass
+ * makes a string per word.
+ *
+ */
+public class StreamCompressor {
+
+	/**
+	 * Counts the frequency of every word and separator in the file,
+	 * giving each new symbol the next id in the table.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the file)
+	 *
+	 * @param file The file to read.
+	 * @param mapped Whether to memory map the file instead of reading it.
+	 * @param table The table to count the symbols in.
+	 * @throws IOException If the file cannot be read.
+	 */
+	public static void countFrequencies(final File file, final boolean mapped,
+			final SymbolTable table) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			Tokenizer tokenizer = mapped ? Tokenizer.map(channel) : new Tokenizer(channel);
+			while (tokenizer.nextId(table, true) >= 0) {
+				// the table does the counting
+			}
+		}
+	}
+
+	/**
+	 * Encodes the file with the codes of the given coding tree and writes
+	 * the header and the packed bits to the output file. The last byte
+	 * is padded with zeros. The number of code bits in the header is
+	 * filled in once they have all been written, since a tree built
+	 * from counts of another input gives a different number.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the file)
+	 *
+	 * @param in The file to compress.
+	 * @param ct The coding tree built from the file.
+	 * @param out The file to write the compressed bits to.
+	 * @param mapped Whether to memory map the file instead of reading it.
+	 * @return The number of bits written, including the header but not the padding.
+	 * @throws IOException If a file cannot be read or written.
+	 */
+	public static long encode(final File in, final CodingTree ct, final File out, final boolean mapped)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(in.toPath(), StandardOpenOption.READ);
+				FileChannel output = FileChannel.open(out.toPath(), StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			Tokenizer tokenizer = mapped ? Tokenizer.map(channel) : new Tokenizer(channel);
+			BitWriter bitWriter = new BitWriter(output);
+			new CompressedFile(ct, CompressedFile.STREAM).write(bitWriter);
+			long header_bits = bitWriter.bitsWritten();
+			long[] code_bits = ct.code_bits;
+			int[] code_lengths = ct.code_lengths;
+			// looked up a batch at a time, so cache misses in the table overlap
+			int[] ids = new int[Tokenizer.BATCH_SIZE];
+			int count;
+			while ((count = tokenizer.nextIds(ct.table, ids)) > 0) {
+				for (int i = 0; i < count; i++) {
+					bitWriter.write(code_bits[ids[i]], code_lengths[ids[i]]);
+				}
+			}
+			bitWriter.finish();
+			CompressedFile.writeBits(output, bitWriter.bitsWritten() - header_bits);
+			return bitWriter.bitsWritten();
+		}
+	}
+
+	/**
+	 * Compresses a file in two passes and prints the same statistics as Main.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the file)
+	 *
+	 * @param in The file to compress.
+	 * @param out The file to write the compressed file to.
+	 * @param mapped Whether to memory map the file instead of reading it.
+	 * @param max_length Longest code length allowed, from 1 to 64.
+	 * @throws IOException If a file cannot be read or written.
+	 */
+	public static void compress(final File in, final File out, final boolean mapped,
+			final int max_length) throws IOException {
+		compress(in, out, null, mapped, max_length);
+	}
+
+	/**
+	 * Compresses a file with symbols counted beforehand, for example a
+	 * table saved by an earlier run and opened with SymbolTable.open,
+	 * which skips the first pass. Every symbol of the file must be in
+	 * the table, but the counts may come from another input, such as
+	 * a larger text the file is part of. Prints the same statistics
+	 * as Main.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the file)
+	 *
+	 * @param in The file to compress.
+	 * @param out The file to write the compressed file to.
+	 * @param counted The counted symbols, or null to count those of the file.
+	 * @param mapped Whether to memory map the file instead of reading it.
+	 * @param max_length Longest code length allowed, from 1 to 64.
+	 * @throws IOException If a file cannot be read or written.
+	 */
+	public static void compress(final File in, final File out, final SymbolTable counted,
+			final boolean mapped, final int max_length) throws IOException {
+		long start = System.currentTimeMillis();
+
+		SymbolTable table = counted;
+		if (table == null) {
+			table = new SymbolTable();
+			countFrequencies(in, mapped, table);
+		}
+		encodeAndReport(in, out, new CodingTree(table, max_length), mapped, start);
+	}
+
+	/**
+	 * Compresses a file with codes built beforehand, for example code
+	 * lengths saved next to a symbol table and opened with
+	 * CodingTree.open, which skips both counting and building the
+	 * tree. Every symbol of the file must be in the table of the tree.
+	 * Prints the same statistics as Main.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the file)
+	 *
+	 * @param in The file to compress.
+	 * @param out The file to write the compressed file to.
+	 * @param ct The coding tree.
+	 * @param mapped Whether to memory map the file instead of reading it.
+	 * @throws IOException If a file cannot be read or written.
+	 */
+	public static void compress(final File in, final File out, final CodingTree ct,
+			final boolean mapped) throws IOException {
+		encodeAndReport(in, out, ct, mapped, System.currentTimeMillis());
+	}
+
+	/**
+	 * Encodes a file and prints the same statistics as Main.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the file)
+	 *
+	 * @param in The file to compress.
+	 * @param out The file to write the compressed file to.
+	 * @param ct The coding tree.
+	 * @param mapped Whether to memory map the file instead of reading it.
+	 * @param start When compressing started, in milliseconds.
+	 * @throws IOException If a file cannot be read or written.
+	 */
+	private static void encodeAndReport(final File in, final File out, final CodingTree ct,
+			final boolean mapped, final long start) throws IOException {
+		long compressedCost = encode(in, ct, out, mapped);
+		long asciiCost = in.length() * 8;
+
+		long duration = System.currentTimeMillis() - start;
+
+		System.out.println("Uncompressed file size: " + asciiCost / 8 + " bytes");
+		System.out.println("Compressed file size: " + compressedCost / 8 + " bytes");
+		if (asciiCost > 0) {
+			System.out.println("Compression ratio: " + compressedCost * 100 / asciiCost + "%"
+					+ ct.limitCost(asciiCost));
+		}
+		System.out.println("Running Time: " + duration + " milliseconds");
+	}
+}
@@ -0,0 +1,952 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Gives every distinct word or symbol a dense int id, starting at 0,
+ * and counts how often each one occurs. Symbols are looked up straight
+ * from a range of bytes (or chars), so the tokenizer never has to
+ * create a string for a symbol that is already in the table.
+ *
+ * All of the table lives outside the Java heap, in direct buffers, so
+ * a vocabulary of any size adds nothing for the garbage collector to
+ * scan. The -XX:MaxDirectMemorySize option sets how large it can get.
+ * The table is made of three parts:
+ *
+ * the arena, holding the bytes of all symbols one after the other,
+ * in chunks that are allocated as it fills up;
+ *
+ * the entries, holding the arena offset, hash, length and count of
+ * each symbol, ENTRY_SIZE bytes each, indexed by id;
+ *
+ * the slots, an open addressing index with linear probing holding
+ * the hash and id + 1 of a symbol in each slot, or 0 for an empty
+ * slot, so most mismatches are found without reading the entry.
+ *
+ * Symbols are bytes. The Tokenizer class adds the bytes of a file as
+ * they are, and symbols given as characters are stored as their
+ * UTF-8 bytes, so any string can be a symbol. Lookups never change
+ * the table, so any number of threads can look up symbols once
+ * counting is done.
+ *
+ * A counted table can be saved to a file and opened again with
+ * FileChannel.map: the three parts are written as they are, so the
+ * opened table looks symbols up straight from the mapped file without
+ * reading it first. The file is laid out as:
+ *
+ * magic number (4 bytes), byte order (1 byte, 0 for little endian),
+ * 3 bytes of padding, number of symbols, number of slots and number
+ * of arena chunks (4 bytes each), the size of each arena chunk and
+ * the ids of single byte symbols (4 bytes each), padding up to a
+ * multiple of 8 bytes, then the slots, the entries of all symbols and
+ * the arena chunks, one after the other, all in the given byte order.
+ *
+ */
+public class SymbolTable {
+
+	/**
+	 * Size of an entry in bytes: offset (8), hash (4), length (4), count (8).
+	 */
+	private static final int ENTRY_SIZE = 24;
+
+	/**
+	 * Log2 of the number of entries in each chunk of entries.
+	 */
+	private static final int ENTRY_BITS = 16;
+
+	/**
+	 * Size of the first arena chunk in bytes.
+	 */
+	private static final int MIN_ARENA_CHUNK = 1 << 16;
+
+	/**
+	 * Largest size an arena chunk grows to in bytes, unless a single
+	 * symbol needs more.
+	 */
+	private static final int MAX_ARENA_CHUNK = 1 << 26;
+
+	/**
+	 * Largest number of slots, so the slots fit in one buffer.
+	 */
+	private static final int MAX_SLOTS = 1 << 27;
+
+	/**
+	 * Number of symbols from which findAll overlaps the lookups of a
+	 * batch. Below it the table mostly fits in the processor caches,
+	 * and the extra passes over the batch cost more than they save.
+	 */
+	public static final int BATCH_SYMBOLS = 1 << 18;
+
+	/**
+	 * Character set of symbols given as characters.
+	 */
+	public static final Charset CHARSET = StandardCharsets.UTF_8;
+
+	/**
+	 * Marks the start of a saved symbol table ("SYM2"). Tables saved
+	 * as "SYM1" held int counts and are no longer read.
+	 */
+	public static final int MAGIC = 0x53594D32;
+
+	/**
+	 * The chunks of the arena. Arena offsets hold the chunk index in
+	 * the high half and the position in the chunk in the low half.
+	 */
+	private ByteBuffer[] arena;
+
+	/**
+	 * Number of arena chunks in use. Only the last one is written to.
+	 */
+	private int arena_chunks;
+
+	/**
+	 * Number of bytes used in the last arena chunk.
+	 */
+	private int arena_size;
+
+	/**
+	 * The chunks of entries, each holding 2^ENTRY_BITS entries.
+	 */
+	private ByteBuffer[] entries;
+
+	/**
+	 * The slots of the index, eight bytes each.
+	 */
+	private ByteBuffer slots;
+
+	/**
+	 * Number of slots, always a power of two.
+	 */
+	private int capacity;
+
+	/**
+	 * Number of symbols.
+	 */
+	private int count;
+
+	/**
+	 * Ids of single byte symbols indexed by byte value, or -1.
+	 * Separators are always a single byte, so most lookups stop here.
+	 */
+	private final int[] byte_ids;
+
+	/**
+	 * Whether the table is mapped from a file, which is never written to.
+	 */
+	private final boolean read_only;
+
+	/**
+	 * Creates an empty symbol table.
+	 *
+	 * Runtime: O(1)
+	 */
+	public SymbolTable() {
+		arena = new ByteBuffer[4];
+		arena[0] = allocate(MIN_ARENA_CHUNK);
+		arena_chunks = 1;
+		arena_size = 0;
+		entries = new ByteBuffer[4];
+		capacity = 512;
+		slots = allocate(8 * capacity);
+		count = 0;
+		byte_ids = new int[256];
+		java.util.Arrays.fill(byte_ids, -1);
+		read_only = false;
+	}
+
+	/**
+	 * Creates a read only table from the parts of a saved one.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param the_arena The arena chunks.
+	 * @param the_entries The chunks of entries.
+	 * @param the_slots The slots.
+	 * @param the_count The number of symbols.
+	 * @param the_byte_ids The ids of single byte symbols.
+	 */
+	private SymbolTable(final ByteBuffer[] the_arena, final ByteBuffer[] the_entries,
+			final ByteBuffer the_slots, final int the_count, final int[] the_byte_ids) {
+		arena = the_arena;
+		arena_chunks = the_arena.length;
+		arena_size = the_arena[arena_chunks - 1].capacity();
+		entries = the_entries;
+		slots = the_slots;
+		capacity = the_slots.capacity() / 8;
+		count = the_count;
+		byte_ids = the_byte_ids;
+		read_only = true;
+	}
+
+	/**
+	 * Opens a table saved with the save method. The parts of the table
+	 * are mapped from the file rather than read, so opening takes the
+	 * same short time for any size of table, and the pages of the file
+	 * are only read as lookups touch them. The table is read only.
+	 *
+	 * Runtime: O(c)
+	 * (where c is the number of chunks)
+	 *
+	 * @param file The file to open.
+	 * @return The table.
+	 * @throws IOException If the file cannot be read or is not a saved table.
+	 */
+	public static SymbolTable open(final File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(20);
+			readFully(channel, header, 0);
+			ByteOrder order = header.get(4) == 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+			header.order(order);
+			if (header.getInt(0) != MAGIC) {
+				throw new IOException("Not a symbol table");
+			}
+			int count = header.getInt(8);
+			int capacity = header.getInt(12);
+			int chunks = header.getInt(16);
+			if (count < 0 || 2 * count > capacity || capacity > MAX_SLOTS
+					|| (capacity & (capacity - 1)) != 0 || chunks < 1 || chunks > 1 << 20) {
+				throw new IOException("Malformed symbol table");
+			}
+			ByteBuffer sizes = ByteBuffer.allocate(4 * chunks).order(order);
+			readFully(channel, sizes, 20);
+			ByteBuffer ids = ByteBuffer.allocate(4 * 256).order(order);
+			readFully(channel, ids, 20 + 4 * chunks);
+			int[] byte_ids = new int[256];
+			ids.asIntBuffer().get(byte_ids);
+
+			long position = headerSize(chunks);
+			ByteBuffer slots = map(channel, position, 8 * capacity, order);
+			position += 8 * capacity;
+			ByteBuffer[] entries = new ByteBuffer[(count >>> ENTRY_BITS) + 1];
+			for (int i = 0; i << ENTRY_BITS < count; i++) {
+				int size = ENTRY_SIZE * Math.min(1 << ENTRY_BITS, count - (i << ENTRY_BITS));
+				entries[i] = map(channel, position, size, order);
+				position += size;
+			}
+			ByteBuffer[] arena = new ByteBuffer[chunks];
+			for (int i = 0; i < chunks; i++) {
+				arena[i] = map(channel, position, sizes.getInt(4 * i), order);
+				position += arena[i].capacity();
+			}
+			if (position != channel.size()) {
+				throw new IOException("Malformed symbol table");
+			}
+			return new SymbolTable(arena, entries, slots, count, byte_ids);
+		}
+	}
+
+	/**
+	 * Saves the table to a file that the open method can map. The
+	 * parts of the table are written straight from their buffers.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the table in bytes)
+	 *
+	 * @param file The file to write.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public void save(final File file) throws IOException {
+		ByteOrder order = slots.order();
+		int header_size = headerSize(arena_chunks);
+		ByteBuffer header = ByteBuffer.allocate(header_size).order(order);
+		header.putInt(MAGIC);
+		header.put((byte) (order == ByteOrder.LITTLE_ENDIAN ? 0 : 1));
+		header.position(8);
+		header.putInt(count);
+		header.putInt(capacity);
+		header.putInt(arena_chunks);
+		for (int i = 0; i < arena_chunks; i++) {
+			header.putInt(i == arena_chunks - 1 ? arena_size : arena[i].capacity());
+		}
+		for (int i = 0; i < 256; i++) {
+			header.putInt(byte_ids[i]);
+		}
+		header.clear();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			writeFully(channel, header, header_size);
+			writeFully(channel, slots.duplicate(), 8 * capacity);
+			for (int i = 0; i << ENTRY_BITS < count; i++) {
+				writeFully(channel, entries[i].duplicate(),
+						ENTRY_SIZE * Math.min(1 << ENTRY_BITS, count - (i << ENTRY_BITS)));
+			}
+			for (int i = 0; i < arena_chunks; i++) {
+				writeFully(channel, arena[i].duplicate(),
+						i == arena_chunks - 1 ? arena_size : arena[i].capacity());
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of symbols.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @return The number of symbols.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns the id of the symbol in the given bytes, adding the
+	 * symbol with a count of 0 if it is not in the table yet.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the symbol)
+	 *
+	 * @param buffer The buffer holding the symbol.
+	 * @param start Index of the first byte of the symbol.
+	 * @param length Length of the symbol.
+	 * @return The id of the symbol.
+	 */
+	public int add(final ByteBuffer buffer, final int start, final int length) {
+		int id = find(buffer, start, length);
+		if (id >= 0) {
+			return id;
+		}
+		checkWritable();
+		long offset = reserve(length);
+		ByteBuffer chunk = arena[(int) (offset >>> 32)];
+		for (int i = 0; i < length; i++) {
+			chunk.put((int) offset + i, buffer.get(start + i));
+		}
+		return insert(offset, length, hash(buffer, start, length));
+	}
+
+	/**
+	 * Adds one to the count of the symbol in the given bytes, adding
+	 * the symbol if it is not in the table yet.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the symbol)
+	 *
+	 * @param buffer The buffer holding the symbol.
+	 * @param start Index of the first byte of the symbol.
+	 * @param length Length of the symbol.
+	 * @return The id of the symbol.
+	 */
+	public int increment(final ByteBuffer buffer, final int start, final int length) {
+		checkWritable();
+		int id = add(buffer, start, length);
+		ByteBuffer chunk = entries[id >>> ENTRY_BITS];
+		int position = position(id) + 16;
+		chunk.putLong(position, chunk.getLong(position) + 1);
+		return id;
+	}
+
+	/**
+	 * Adds to the count of the given symbol, adding the symbol if it
+	 * is not in the table yet. The symbol is stored as its UTF-8 bytes.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the symbol)
+	 *
+	 * @param symbol The symbol.
+	 * @param amount The amount to add to its count.
+	 * @return The id of the symbol.
+	 */
+	public int add(final String symbol, final long amount) {
+		checkWritable();
+		int id = find(symbol, 0, symbol.length());
+		if (id < 0) {
+			byte[] bytes = symbol.getBytes(CHARSET);
+			id = add(ByteBuffer.wrap(bytes), 0, bytes.length);
+		}
+		ByteBuffer chunk = entries[id >>> ENTRY_BITS];
+		int position = position(id) + 16;
+		chunk.putLong(position, chunk.getLong(position) + amount);
+		return id;
+	}
+
+	/**
+	 * Finds the id of the symbol in the given bytes.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the symbol)
+	 *
+	 * @param buffer The buffer holding the symbol.
+	 * @param start Index of the first byte of the symbol.
+	 * @param length Length of the symbol.
+	 * @return The id of the symbol, or -1 if it is not in the table.
+	 */
+	public int find(final ByteBuffer buffer, final int start, final int length) {
+		if (length == 1) {
+			return byte_ids[buffer.get(start) & 0xFF];
+		}
+		return probe(buffer, start, length, hash(buffer, start, length));
+	}
+
+	/**
+	 * Finds the ids of a batch of symbols in the given bytes. Each
+	 * lookup reads a slot, an entry and the bytes of a symbol, and
+	 * each read depends on the one before. Here the slots of the whole
+	 * batch are read first, then the entries they point to, then the
+	 * symbols, so the cache misses of a batch overlap instead of being
+	 * waited for one at a time. This pays off once the table no longer
+	 * fits in the processor caches; smaller tables are searched one
+	 * symbol at a time.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the total length of the symbols)
+	 *
+	 * @param buffer The buffer holding the symbols.
+	 * @param starts Index of the first byte of each symbol.
+	 * @param lengths Length of each symbol.
+	 * @param count Number of symbols in the batch.
+	 * @param ids Receives the id of each symbol, or -1 if it is not in the table.
+	 */
+	public void findAll(final ByteBuffer buffer, final int[] starts, final int[] lengths,
+			final int count, final int[] ids) {
+		if (this.count < BATCH_SYMBOLS) {
+			for (int i = 0; i < count; i++) {
+				ids[i] = find(buffer, starts[i], lengths[i]);
+			}
+			return;
+		}
+		int[] hashes = new int[count];
+		int mask = capacity - 1;
+		// hash every symbol and take the id in its home slot if the hash matches
+		for (int i = 0; i < count; i++) {
+			if (lengths[i] == 1) {
+				ids[i] = byte_ids[buffer.get(starts[i]) & 0xFF];
+			} else {
+				int hash = hash(buffer, starts[i], lengths[i]);
+				int slot = 8 * (spread(hash) & mask);
+				hashes[i] = hash;
+				ids[i] = slots.getInt(slot) == hash ? slots.getInt(slot + 4) - 1 : -1;
+			}
+		}
+		// drop the ids whose entries have the wrong length
+		for (int i = 0; i < count; i++) {
+			int id = ids[i];
+			if (lengths[i] != 1 && id >= 0
+					&& entries[id >>> ENTRY_BITS].getInt(position(id) + 12) != lengths[i]) {
+				ids[i] = -1;
+			}
+		}
+		// compare the symbols, and probe past the home slot for the rest
+		for (int i = 0; i < count; i++) {
+			int id = ids[i];
+			if (lengths[i] == 1 || id >= 0
+					&& matches(entries[id >>> ENTRY_BITS].getLong(position(id)), buffer,
+							starts[i], lengths[i])) {
+				continue;
+			}
+			ids[i] = probe(buffer, starts[i], lengths[i], hashes[i]);
+		}
+	}
+
+	/**
+	 * Finds the id of the symbol in the given characters, which are
+	 * looked up by their UTF-8 bytes without encoding them first.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the symbol)
+	 *
+	 * @param text The text holding the symbol.
+	 * @param start Index of the first character of the symbol.
+	 * @param length Length of the symbol.
+	 * @return The id of the symbol, or -1 if it is not in the table.
+	 */
+	public int find(final CharSequence text, final int start, final int length) {
+		if (length == 1 && text.charAt(start) < 0x80) {
+			return byte_ids[text.charAt(start)];
+		}
+		int hash = hash(text, start, length);
+		int size = utf8Length(text, start, length);
+		int mask = capacity - 1;
+		for (int slot = spread(hash) & mask; slots.getInt(8 * slot + 4) != 0;
+				slot = (slot + 1) & mask) {
+			if (slots.getInt(8 * slot) == hash) {
+				int id = slots.getInt(8 * slot + 4) - 1;
+				ByteBuffer chunk = entries[id >>> ENTRY_BITS];
+				int position = position(id);
+				if (chunk.getInt(position + 12) == size
+						&& matches(chunk.getLong(position), text, start, length)) {
+					return id;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the count of the symbol with the given id.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param id The id of the symbol.
+	 * @return The count of the symbol.
+	 */
+	public long count(final int id) {
+		return entries[id >>> ENTRY_BITS].getLong(position(id) + 16);
+	}
+
+	/**
+	 * Returns the symbol with the given id as a string, reading its
+	 * bytes as UTF-8. Bytes of a file that are not UTF-8 do not read
+	 * back as the same bytes; the bytes method gives them as they are.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the symbol)
+	 *
+	 * @param id The id of the symbol.
+	 * @return The symbol.
+	 */
+	public String symbol(final int id) {
+		ByteBuffer symbol = bytes(id);
+		byte[] bytes = new byte[symbol.remaining()];
+		symbol.get(bytes);
+		return new String(bytes, CHARSET);
+	}
+
+	/**
+	 * Returns the bytes of the symbol with the given id as a read only
+	 * view of the arena, so they can be written out without copying
+	 * the symbol onto the heap.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param id The id of the symbol.
+	 * @return The bytes of the symbol, from position 0 to the limit.
+	 */
+	public ByteBuffer bytes(final int id) {
+		ByteBuffer chunk = entries[id >>> ENTRY_BITS];
+		int position = position(id);
+		long offset = chunk.getLong(position);
+		ByteBuffer symbol = arena[(int) (offset >>> 32)].asReadOnlyBuffer();
+		symbol.limit((int) offset + chunk.getInt(position + 12));
+		symbol.position((int) offset);
+		return symbol.slice();
+	}
+
+	/**
+	 * Probes the slots for the symbol in the given bytes.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the symbol)
+	 *
+	 * @param buffer The buffer holding the symbol.
+	 * @param start Index of the first byte of the symbol.
+	 * @param length Length of the symbol.
+	 * @param hash Hash of the symbol.
+	 * @return The id of the symbol, or -1 if it is not in the table.
+	 */
+	private int probe(final ByteBuffer buffer, final int start, final int length,
+			final int hash) {
+		int mask = capacity - 1;
+		for (int slot = spread(hash) & mask; slots.getInt(8 * slot + 4) != 0;
+				slot = (slot + 1) & mask) {
+			if (slots.getInt(8 * slot) == hash) {
+				int id = slots.getInt(8 * slot + 4) - 1;
+				ByteBuffer chunk = entries[id >>> ENTRY_BITS];
+				int position = position(id);
+				if (chunk.getInt(position + 12) == length
+						&& matches(chunk.getLong(position), buffer, start, length)) {
+					return id;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Makes room in the arena for a symbol of the given length. A new
+	 * chunk, twice the size of the last one, is started when the last
+	 * one is full.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param length Length of the symbol.
+	 * @return The arena offset of the room.
+	 */
+	private long reserve(final int length) {
+		ByteBuffer last = arena[arena_chunks - 1];
+		if (arena_size + length > last.capacity()) {
+			int size = Math.max(Math.min(2 * last.capacity(), MAX_ARENA_CHUNK), length);
+			if (arena_chunks == arena.length) {
+				arena = java.util.Arrays.copyOf(arena, 2 * arena_chunks);
+			}
+			arena[arena_chunks++] = allocate(size);
+			arena_size = 0;
+		}
+		long offset = (long) (arena_chunks - 1) << 32 | arena_size;
+		arena_size += length;
+		return offset;
+	}
+
+	/**
+	 * Adds an entry for a symbol that has been copied into the arena.
+	 *
+	 * Runtime: O(1)
+	 * (amortized over growing the index)
+	 *
+	 * @param offset Arena offset of the symbol.
+	 * @param length Length of the symbol.
+	 * @param hash Hash of the symbol.
+	 * @return The id of the new symbol.
+	 */
+	private int insert(final long offset, final int length, final int hash) {
+		int id = count;
+		int chunk_index = id >>> ENTRY_BITS;
+		if (chunk_index == entries.length) {
+			entries = java.util.Arrays.copyOf(entries, 2 * entries.length);
+		}
+		if (entries[chunk_index] == null) {
+			entries[chunk_index] = allocate(ENTRY_SIZE << ENTRY_BITS);
+		}
+		ByteBuffer chunk = entries[chunk_index];
+		int position = position(id);
+		chunk.putLong(position, offset);
+		chunk.putInt(position + 8, hash);
+		chunk.putInt(position + 12, length);
+		chunk.putLong(position + 16, 0);
+		count++;
+		if (length == 1) {
+			byte_ids[arena[(int) (offset >>> 32)].get((int) offset) & 0xFF] = id;
+		}
+		if (2 * count > capacity) {
+			if (capacity == MAX_SLOTS) {
+				throw new IllegalStateException("Too many symbols: " + count);
+			}
+			capacity *= 2;
+			slots = allocate(8 * capacity);
+			for (int i = 0; i < count; i++) {
+				place(i);
+			}
+		} else {
+			place(id);
+		}
+		return id;
+	}
+
+	/**
+	 * Puts an id in the first free slot for its hash.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param id The id to place.
+	 */
+	private void place(final int id) {
+		int mask = capacity - 1;
+		int hash = entries[id >>> ENTRY_BITS].getInt(position(id) + 8);
+		int slot = spread(hash) & mask;
+		while (slots.getInt(8 * slot + 4) != 0) {
+			slot = (slot + 1) & mask;
+		}
+		slots.putInt(8 * slot, hash);
+		slots.putInt(8 * slot + 4, id + 1);
+	}
+
+	/**
+	 * Stops a change to a table mapped from a file.
+	 *
+	 * Runtime: O(1)
+	 */
+	private void checkWritable() {
+		if (read_only) {
+			throw new UnsupportedOperationException("Symbol table was opened read only");
+		}
+	}
+
+	/**
+	 * Finds the size of the header of a saved table, padded so the
+	 * slots after it start at a multiple of 8 bytes.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param chunks The number of arena chunks.
+	 * @return The size of the header in bytes.
+	 */
+	private static int headerSize(final int chunks) {
+		return (20 + 4 * chunks + 4 * 256 + 7) & ~7;
+	}
+
+	/**
+	 * Maps part of a file as a read only buffer.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param channel The file.
+	 * @param position Where the part starts.
+	 * @param size The size of the part in bytes.
+	 * @param order The byte order of the part.
+	 * @return The buffer.
+	 * @throws IOException If the file is too short or cannot be mapped.
+	 */
+	private static ByteBuffer map(final FileChannel channel, final long position, final int size,
+			final ByteOrder order) throws IOException {
+		if (position + size > channel.size()) {
+			throw new IOException("Unexpected end of file");
+		}
+		return channel.map(MapMode.READ_ONLY, position, size).order(order);
+	}
+
+	/**
+	 * Reads bytes from a file until the buffer is full.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the buffer)
+	 *
+	 * @param channel The file.
+	 * @param buffer The buffer to fill.
+	 * @param the_position Where to start reading.
+	 * @throws IOException If the file is too short or cannot be read.
+	 */
+	private static void readFully(final FileChannel channel, final ByteBuffer buffer,
+			final long the_position) throws IOException {
+		long position = the_position;
+		buffer.clear();
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+			position += read;
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * Writes the first bytes of a buffer to the end of a file.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the number of bytes)
+	 *
+	 * @param channel The file.
+	 * @param buffer The buffer, positioned at 0.
+	 * @param size The number of bytes to write.
+	 * @throws IOException If the file cannot be written.
+	 */
+	private static void writeFully(final FileChannel channel, final ByteBuffer buffer,
+			final int size) throws IOException {
+		buffer.position(0).limit(size);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Allocates a buffer outside the heap, in the byte order of the
+	 * machine so ints are read without swapping bytes.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the buffer)
+	 *
+	 * @param size The size of the buffer in bytes.
+	 * @return The buffer, filled with zeros.
+	 */
+	private static ByteBuffer allocate(final int size) {
+		return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Finds where the entry of an id starts in its chunk of entries.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param id The id.
+	 * @return The position of the entry in its chunk.
+	 */
+	private static int position(final int id) {
+		return (id & ((1 << ENTRY_BITS) - 1)) * ENTRY_SIZE;
+	}
+
+	/**
+	 * Compares a symbol in the arena to the given bytes.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the symbol)
+	 *
+	 * @param offset Arena offset of the symbol.
+	 * @param buffer The buffer holding the other symbol.
+	 * @param start Index of the first byte of the other symbol.
+	 * @param length Length of both symbols.
+	 * @return True if they are the same, false otherwise.
+	 */
+	private boolean matches(final long offset, final ByteBuffer buffer, final int start,
+			final int length) {
+		ByteBuffer chunk = arena[(int) (offset >>> 32)];
+		int position = (int) offset;
+		for (int i = 0; i < length; i++) {
+			if (chunk.get(position + i) != buffer.get(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compares a symbol in the arena to the UTF-8 bytes of the given
+	 * characters.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the symbol)
+	 *
+	 * @param offset Arena offset of the symbol.
+	 * @param text The text holding the other symbol.
+	 * @param start Index of the first character of the other symbol.
+	 * @param length Number of characters of the other symbol, whose
+	 * UTF-8 bytes are as many as the bytes of the symbol.
+	 * @return True if they are the same, false otherwise.
+	 */
+	private boolean matches(final long offset, final CharSequence text, final int start,
+			final int length) {
+		ByteBuffer chunk = arena[(int) (offset >>> 32)];
+		int position = (int) offset;
+		int end = start + length;
+		for (int i = start; i < end; ) {
+			int code_point = codePoint(text, i, end);
+			i += Character.charCount(code_point);
+			int bytes = utf8Length(code_point);
+			for (int j = 0; j < bytes; j++) {
+				if ((chunk.get(position++) & 0xFF) != utf8Byte(code_point, bytes, j)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Hashes a range of bytes (FNV-1a).
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the range)
+	 *
+	 * @param buffer The buffer holding the bytes.
+	 * @param start Index of the first byte.
+	 * @param length Number of bytes.
+	 * @return The hash.
+	 */
+	private static int hash(final ByteBuffer buffer, final int start, final int length) {
+		int hash = 0x811C9DC5;
+		for (int i = start; i < start + length; i++) {
+			hash = (hash ^ (buffer.get(i) & 0xFF)) * 0x01000193;
+		}
+		return hash;
+	}
+
+	/**
+	 * Hashes a range of characters the same way as their UTF-8 bytes.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the range)
+	 *
+	 * @param text The text holding the characters.
+	 * @param start Index of the first character.
+	 * @param length Number of characters.
+	 * @return The hash.
+	 */
+	private static int hash(final CharSequence text, final int start, final int length) {
+		int hash = 0x811C9DC5;
+		int end = start + length;
+		for (int i = start; i < end; ) {
+			int code_point = codePoint(text, i, end);
+			i += Character.charCount(code_point);
+			int bytes = utf8Length(code_point);
+			for (int j = 0; j < bytes; j++) {
+				hash = (hash ^ utf8Byte(code_point, bytes, j)) * 0x01000193;
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Reads the character at the given index, joined with the next
+	 * one if the two are a surrogate pair. A surrogate without its
+	 * other half reads as '?', the byte String.getBytes writes for it.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param text The text holding the character.
+	 * @param index Index of the character.
+	 * @param end Index after the last character that may be read.
+	 * @return The code point.
+	 */
+	private static int codePoint(final CharSequence text, final int index, final int end) {
+		char ch = text.charAt(index);
+		if (index + 1 < end && Character.isSurrogatePair(ch, text.charAt(index + 1))) {
+			return Character.toCodePoint(ch, text.charAt(index + 1));
+		}
+		return Character.isSurrogate(ch) ? '?' : ch;
+	}
+
+	/**
+	 * Counts the UTF-8 bytes of a range of characters.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the range)
+	 *
+	 * @param text The text holding the characters.
+	 * @param start Index of the first character.
+	 * @param length Number of characters.
+	 * @return The number of bytes.
+	 */
+	private static int utf8Length(final CharSequence text, final int start, final int length) {
+		int size = 0;
+		int end = start + length;
+		for (int i = start; i < end; ) {
+			int code_point = codePoint(text, i, end);
+			i += Character.charCount(code_point);
+			size += utf8Length(code_point);
+		}
+		return size;
+	}
+
+	/**
+	 * Counts the UTF-8 bytes of a code point.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param code_point The code point.
+	 * @return The number of bytes, from 1 to 4.
+	 */
+	private static int utf8Length(final int code_point) {
+		if (code_point < 0x80) {
+			return 1;
+		}
+		return code_point < 0x800 ? 2 : code_point < 0x10000 ? 3 : 4;
+	}
+
+	/**
+	 * Finds one of the UTF-8 bytes of a code point.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param code_point The code point.
+	 * @param bytes The number of bytes of the code point.
+	 * @param index Which byte to find, from 0.
+	 * @return The byte, from 0 to 0xFF.
+	 */
+	private static int utf8Byte(final int code_point, final int bytes, final int index) {
+		if (bytes == 1) {
+			return code_point;
+		}
+		int shift = 6 * (bytes - 1 - index);
+		if (index == 0) {
+			// the first byte holds as many high bits as there are bytes
+			return (0xFF00 >>> bytes) & 0xFF | code_point >>> shift;
+		}
+		return 0x80 | (code_point >>> shift) & 0x3F;
+	}
+
+	/**
+	 * Mixes the high bits of a hash into the low bits used for slots.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param hash The hash.
+	 * @return The spread hash.
+	 */
+	private static int spread(final int hash) {
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,404 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits a byte stream into the words and separators used by the
+ * CodingTree class. Input from a channel is read in fixed-size
+ * chunks, so only the current chunk (and a word that runs over the
+ * end of it) is ever held in memory.
+ *
+ * A file can also be memory mapped, in which case the words are
+ * read straight out of the mapping without copying the file into
+ * the heap. The file is mapped in windows of MAP_SIZE bytes so
+ * files larger than the heap (or than 2GB) can be read.
+ *
+ * Bytes are mapped one to one onto characters (ISO-8859-1), so
+ * any file survives the trip through the compressor byte for byte.
+ *
+ */
+public class Tokenizer {
+
+	/**
+	 * Character set used to turn bytes into symbols and back.
+	 */
+	public static final Charset CHARSET = StandardCharsets.ISO_8859_1;
+
+	/**
+	 * Number of symbols the encoders look up at once with nextIds.
+	 */
+	public static final int BATCH_SIZE = 256;
+
+	/**
+	 * Number of bytes read from the channel at a time.
+	 */
+	public static final int CHUNK_SIZE = 1 << 16;
+
+	/**
+	 * Number of bytes of a file mapped at a time.
+	 */
+	public static final int MAP_SIZE = 1 << 30;
+
+	/**
+	 * Word character flags indexed by byte value.
+	 */
+	private static final boolean[] WORD_CHARS = new boolean[256];
+
+	/**
+	 * Single character symbols indexed by byte value, so separators
+	 * never allocate a new string.
+	 */
+	private static final String[] SINGLES = new String[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			char ch = (char) i;
+			WORD_CHARS[i] = (ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z')
+					|| (ch >= '0' && ch <= '9') || ch == '\'' || ch == '-';
+			SINGLES[i] = String.valueOf(ch);
+		}
+	}
+
+	/**
+	 * The channel to read from, null when reading from an array or a mapping.
+	 */
+	private final ReadableByteChannel in;
+
+	/**
+	 * The file to map, null unless the input is memory mapped.
+	 */
+	private final FileChannel file;
+
+	/**
+	 * Offset in the file of the start of the current mapping.
+	 */
+	private long file_offset;
+
+	/**
+	 * Bytes read from the channel (or the current mapping of the file)
+	 * but not yet tokenized.
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * Index in the buffer of the first byte of the last symbol read.
+	 */
+	private int token_start;
+
+	/**
+	 * Scratch space for copying words out of a mapping.
+	 */
+	private byte[] scratch;
+
+	/**
+	 * Whether the end of the channel has been reached.
+	 */
+	private boolean eof;
+
+	/**
+	 * Start of each symbol of the batch read by nextIds.
+	 */
+	private int[] starts;
+
+	/**
+	 * Length of each symbol of the batch read by nextIds.
+	 */
+	private int[] lengths;
+
+	/**
+	 * Creates a new tokenizer reading from the given channel.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param the_in The channel to read from.
+	 */
+	public Tokenizer(final ReadableByteChannel the_in) {
+		this(the_in, null);
+	}
+
+	/**
+	 * Creates a new tokenizer reading from a channel or mapping a file.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param the_in The channel to read from, null when mapping.
+	 * @param the_file The file to map, null when reading from the channel.
+	 */
+	private Tokenizer(final ReadableByteChannel the_in, final FileChannel the_file) {
+		in = the_in;
+		file = the_file;
+		file_offset = 0;
+		buffer = ByteBuffer.allocate(the_file == null ? CHUNK_SIZE : 0);
+		buffer.flip();
+		scratch = new byte[64];
+		eof = false;
+	}
+
+	/**
+	 * Creates a new tokenizer reading a memory mapped file.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param file The file to read.
+	 * @return The tokenizer.
+	 */
+	public static Tokenizer map(final FileChannel file) {
+		return new Tokenizer(null, file);
+	}
+
+	/**
+	 * Creates a new tokenizer reading from part of an array.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param data The bytes to read.
+	 * @param offset Index of the first byte to read.
+	 * @param length Number of bytes to read.
+	 */
+	public Tokenizer(final byte[] data, final int offset, final int length) {
+		in = null;
+		file = null;
+		buffer = ByteBuffer.wrap(data, offset, length);
+		eof = true;
+	}
+
+	/**
+	 * Determines if the given byte is a valid character for
+	 * a word as defined in the assignment guidelines.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @param b Byte to test.
+	 * @return True if it is a valid word character, false otherwise.
+	 */
+	public static boolean isWordChar(final byte b) {
+		return WORD_CHARS[b & 0xFF];
+	}
+
+	/**
+	 * Reads the next word or separator.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the symbol)
+	 *
+	 * @return The next symbol, or null at the end of the input.
+	 * @throws IOException If the channel cannot be read.
+	 */
+	public String next() throws IOException {
+		int length = advance();
+		if (length == 0) {
+			return null;
+		}
+		if (length == 1) {
+			return SINGLES[buffer.get(token_start) & 0xFF];
+		}
+		if (buffer.hasArray()) {
+			return new String(buffer.array(), buffer.arrayOffset() + token_start, length, CHARSET);
+		}
+		if (scratch.length < length) {
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		}
+		buffer.position(token_start);
+		buffer.get(scratch, 0, length);
+		return new String(scratch, 0, length, CHARSET);
+	}
+
+	/**
+	 * Reads the next word or separator and looks up its id, without
+	 * making a string for it.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the symbol)
+	 *
+	 * @param table The ids of the symbols.
+	 * @param count Whether to count the symbol, adding it to the table
+	 * if it is not in it yet.
+	 * @return The id of the next symbol, or -1 at the end of the input.
+	 * @throws IOException If the channel cannot be read, or if count is
+	 * false and the symbol is not in the table.
+	 */
+	public int nextId(final SymbolTable table, final boolean count) throws IOException {
+		int length = advance();
+		if (length == 0) {
+			return -1;
+		}
+		if (count) {
+			return table.increment(buffer, token_start, length);
+		}
+		int id = table.find(buffer, token_start, length);
+		if (id < 0) {
+			throw new IOException("Input has changed since it was counted");
+		}
+		return id;
+	}
+
+	/**
+	 * Reads as many of the next words and separators as fit in the
+	 * given array, up to the end of the bytes read so far, and looks
+	 * up their ids together with SymbolTable.findAll. Tables smaller
+	 * than SymbolTable.BATCH_SYMBOLS are searched one symbol at a time.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the total length of the symbols)
+	 *
+	 * @param table The ids of the symbols.
+	 * @param ids Receives the ids of the symbols.
+	 * @return The number of ids read, or 0 at the end of the input.
+	 * @throws IOException If the channel cannot be read, or if a
+	 * symbol is not in the table.
+	 */
+	public int nextIds(final SymbolTable table, final int[] ids) throws IOException {
+		if (table.size() < SymbolTable.BATCH_SYMBOLS) {
+			// the table fits in the caches, so there are no misses to overlap
+			int count = 0;
+			int id;
+			while (count < ids.length && (id = nextId(table, false)) >= 0) {
+				ids[count++] = id;
+			}
+			return count;
+		}
+		if (starts == null || starts.length < ids.length) {
+			starts = new int[ids.length];
+			lengths = new int[ids.length];
+		}
+		ByteBuffer bytes = buffer;
+		int count = 0;
+		int index = bytes.position();
+		int limit = bytes.limit();
+		while (count < ids.length && index < limit) {
+			int start = index++;
+			if (WORD_CHARS[bytes.get(start) & 0xFF]) {
+				while (index < limit && WORD_CHARS[bytes.get(index) & 0xFF]) {
+					index++;
+				}
+				if (index == limit && !eof) {
+					// the word may go on in the next chunk, leave it for nextId
+					index = start;
+					break;
+				}
+			}
+			starts[count] = start;
+			lengths[count] = index - start;
+			count++;
+		}
+		buffer.position(index);
+		if (count == 0) {
+			int id = nextId(table, false);
+			if (id < 0) {
+				return 0;
+			}
+			ids[0] = id;
+			return 1;
+		}
+		table.findAll(buffer, starts, lengths, count, ids);
+		for (int i = 0; i < count; i++) {
+			if (ids[i] < 0) {
+				throw new IOException("Input has changed since it was counted");
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the next word or separator and moves past it. The symbol
+	 * is left in the buffer starting at token_start.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the length of the symbol)
+	 *
+	 * @return The length of the symbol, or 0 at the end of the input.
+	 * @throws IOException If the channel cannot be read.
+	 */
+	private int advance() throws IOException {
+		if (!buffer.hasRemaining() && !fill()) {
+			return 0;
+		}
+		int start = buffer.position();
+		if (!isWordChar(buffer.get(start))) {
+			buffer.position(start + 1);
+			token_start = start;
+			return 1;
+		}
+		int index = start + 1;
+		while (true) {
+			int limit = buffer.limit();
+			while (index < limit && isWordChar(buffer.get(index))) {
+				index++;
+			}
+			if (index < limit || eof) {
+				break;
+			}
+			// the word runs past the end of the chunk, keep it and read more
+			buffer.position(start);
+			fill();
+			index -= start;
+			start = 0;
+		}
+		buffer.position(index);
+		token_start = start;
+		return index - start;
+	}
+
+	/**
+	 * Moves the unread bytes to the front of the buffer and reads
+	 * the next chunk after them. The buffer is doubled when a single
+	 * word fills all of it. A mapped file is mapped again starting
+	 * at the first unread byte instead.
+	 *
+	 * Runtime: O(n)
+	 * (where n is the size of the buffer)
+	 *
+	 * @return True if more bytes were read, false at the end of the input.
+	 * @throws IOException If the channel cannot be read.
+	 */
+	private boolean fill() throws IOException {
+		if (eof) {
+			return false;
+		}
+		if (file != null) {
+			return remap();
+		}
+		buffer.compact();
+		if (!buffer.hasRemaining()) {
+			ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+			buffer.flip();
+			bigger.put(buffer);
+			buffer = bigger;
+		}
+		int read;
+		do {
+			read = in.read(buffer);
+		} while (read == 0);
+		buffer.flip();
+		if (read < 0) {
+			eof = true;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Maps the next window of the file, starting at the first unread byte.
+	 * The window is doubled when a single word fills all of it.
+	 *
+	 * Runtime: O(1)
+	 *
+	 * @return True if more bytes were mapped, false at the end of the file.
+	 * @throws IOException If the file cannot be mapped.
+	 */
+	private boolean remap() throws IOException {
+		long start = file_offset + buffer.position();
+		long size = Math.min(file.size() - start, MAP_SIZE);
+		if (buffer.position() == 0 && buffer.limit() >= size) {
+			size = Math.min(file.size() - start, Math.min(2L * buffer.limit(), Integer.MAX_VALUE));
+		}
+		int unread = buffer.remaining();
+		buffer = file.map(FileChannel.MapMode.READ_ONLY, start, size);
+		file_offset = start;
+		eof = start + size == file.size();
+		return size > unread;
+	}
+}